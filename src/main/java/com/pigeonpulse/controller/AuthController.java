@@ -11,6 +11,7 @@ import com.pigeonpulse.model.UsuarioPalomar;
 import com.pigeonpulse.security.JwtUtil;
 import com.pigeonpulse.security.PalomarContext;
 import com.pigeonpulse.service.PalomarService;
+import com.pigeonpulse.service.PedigreeClosureService;
 import com.pigeonpulse.service.UsuarioPalomarService;
 import com.pigeonpulse.service.UsuarioService;
 import io.swagger.v3.oas.annotations.Operation;
@@ -35,6 +36,9 @@ public class AuthController {
     @Autowired
     private UsuarioPalomarService usuarioPalomarService;
 
+    @Autowired
+    private PedigreeClosureService pedigreeClosureService;
+
     @Autowired
     private JwtUtil jwtUtil;
 
@@ -192,6 +196,31 @@ public class AuthController {
         }
     }
 
+    @PostMapping("/migrate-memberships")
+    @Operation(summary = "Endpoint temporal para migrar relaciones usuario-palomar a ids deterministas",
+            description = "Solo administradores (security.admin-emails). Después de ejecutarlo, desactivar membership.legacy-fallback en todas las instancias")
+    public ResponseEntity<String> migrateMemberships() {
+        try {
+            int migradas = usuarioPalomarService.migrateMemberships();
+            return ResponseEntity.ok("Relaciones migradas: " + migradas);
+        } catch (ExecutionException | InterruptedException e) {
+            return ResponseEntity.internalServerError()
+                .body("Error al migrar relaciones: " + e.getMessage());
+        }
+    }
+
+    @PostMapping("/rebuild-pedigree-closure")
+    @Operation(summary = "Endpoint temporal para reconstruir el cierre de pedigrí de todos los palomares", description = "Solo administradores (security.admin-emails)")
+    public ResponseEntity<String> rebuildPedigreeClosure() {
+        try {
+            int palomas = pedigreeClosureService.rebuildAll();
+            return ResponseEntity.ok("Palomas procesadas: " + palomas);
+        } catch (ExecutionException | InterruptedException e) {
+            return ResponseEntity.internalServerError()
+                .body("Error al reconstruir el pedigrí: " + e.getMessage());
+        }
+    }
+
     // Record for Firebase login request
     public record FirebaseLoginRequest(String token, String provider) {}
 }
\ No newline at end of file
@@ -1,10 +1,24 @@
 package com.pigeonpulse.controller;
 
+import com.pigeonpulse.dto.AncestroComunDTO;
+import com.pigeonpulse.dto.ConsanguinidadDTO;
+import com.pigeonpulse.dto.DescendienteDTO;
+import com.pigeonpulse.dto.IncidenciaDTO;
+import com.pigeonpulse.dto.IntegridadReporteDTO;
 import com.pigeonpulse.dto.PalomaDTO;
+import com.pigeonpulse.dto.ParejaRecomendadaDTO;
+import com.pigeonpulse.dto.ParentescoDTO;
 import com.pigeonpulse.model.Paloma;
 import com.pigeonpulse.model.Usuario;
+import com.pigeonpulse.model.UsuarioPalomar;
+import com.pigeonpulse.repository.Page;
 import com.pigeonpulse.security.PalomarContext;
+import com.pigeonpulse.service.BreedingPairService;
+import com.pigeonpulse.service.KinshipService;
+import com.pigeonpulse.service.PalomaSearchService;
 import com.pigeonpulse.service.PalomaService;
+import com.pigeonpulse.service.PedigreeClosureService;
+import com.pigeonpulse.service.PedigreeIntegrityService;
 import com.pigeonpulse.service.UsuarioPalomarService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -13,7 +27,12 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Comparator;
 import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
@@ -28,14 +47,39 @@ public class PalomaController {
     @Autowired
     private UsuarioPalomarService usuarioPalomarService;
 
+    @Autowired
+    private KinshipService kinshipService;
+
+    @Autowired
+    private BreedingPairService breedingPairService;
+
+    @Autowired
+    private PedigreeClosureService pedigreeClosureService;
+
+    @Autowired
+    private PedigreeIntegrityService pedigreeIntegrityService;
+
+    @Autowired
+    private PalomaSearchService palomaSearchService;
+
+    private static final Set<String> SORT_FIELDS = Set.of("anillo", "año", "fechaRegistro");
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+
     @GetMapping
-    @Operation(summary = "Listar palomas", description = "Obtiene la lista de palomas con filtros opcionales")
+    @Operation(summary = "Listar palomas", description = "Obtiene la lista de palomas con filtros opcionales. " +
+            "Con limit, sort (anillo, año, fechaRegistro; prefijo '-' para descendente) o cursor devuelve una página " +
+            "y el cursor de la siguiente en la cabecera X-Next-Cursor. search busca en anillo, color y linea y ordena por " +
+            "relevancia (anillo exacto primero) salvo que se indique sort")
     public ResponseEntity<List<PalomaDTO>> getPalomas(
             @RequestParam(required = false) String palomarId,
             @RequestParam(required = false) String estado,
             @RequestParam(required = false) String sexo,
             @RequestParam(required = false) String linea,
-            @RequestParam(required = false) String search) throws ExecutionException, InterruptedException {
+            @RequestParam(required = false) String search,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String cursor) throws ExecutionException, InterruptedException {
 
         PalomarContext palomarContext = (PalomarContext) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
         Usuario usuario = palomarContext.getUsuario();
@@ -49,30 +93,51 @@ public class PalomaController {
             return ResponseEntity.status(403).build();
         }
 
-        List<Paloma> palomas = palomaService.findByPalomarId(targetPalomarId);
-
-        // Apply filters
-        if (estado != null && !estado.isEmpty()) {
-            palomas = palomas.stream()
-                    .filter(p -> estado.equals(p.getEstado()))
-                    .collect(Collectors.toList());
+        boolean paged = limit != null || sort != null || cursor != null;
+        boolean descending = sort != null && sort.startsWith("-");
+        String sortField = sort == null ? "anillo" : (descending ? sort.substring(1) : sort);
+        if (paged && (!SORT_FIELDS.contains(sortField) || (limit != null && (limit < 1 || limit > MAX_PAGE_SIZE)))) {
+            return ResponseEntity.badRequest().build();
         }
-        if (sexo != null && !sexo.isEmpty()) {
-            palomas = palomas.stream()
-                    .filter(p -> sexo.equals(p.getSexo()))
-                    .collect(Collectors.toList());
-        }
-        if (linea != null && !linea.isEmpty()) {
-            palomas = palomas.stream()
-                    .filter(p -> linea.equals(p.getLinea()))
-                    .collect(Collectors.toList());
+        int pageSize = limit != null ? limit : DEFAULT_PAGE_SIZE;
+
+        // Keyset page straight from Firestore
+        if (paged && (search == null || search.isEmpty())) {
+            Page<Paloma> page;
+            try {
+                page = palomaService.findPage(targetPalomarId, estado, sexo, linea, sortField, descending, cursor, pageSize);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().build();
+            }
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (page.nextCursor() != null) {
+                response.header("X-Next-Cursor", page.nextCursor());
+            }
+            return response.body(page.items().stream()
+                    .map(this::convertToDTO)
+                    .collect(Collectors.toList()));
         }
+
+        List<Paloma> palomas;
         if (search != null && !search.isEmpty()) {
-            String searchLower = search.toLowerCase();
+            // Ranked by relevance from the palomar's search index; without sort the index
+            // applies the limit itself
+            palomas = palomaSearchService.search(targetPalomarId, search, estado, sexo, linea,
+                    paged && sort == null ? Integer.valueOf(pageSize) : null);
+        } else {
+            palomas = palomaService.findByPalomarId(targetPalomarId, estado, sexo, linea, null);
+        }
+
+        // Search results with an explicit sort are sorted and truncated in memory, without a cursor
+        if (paged && sort != null) {
+            Comparator<Paloma> comparator = switch (sortField) {
+                case "año" -> Comparator.comparing(Paloma::getAño, Comparator.nullsFirst(Comparator.naturalOrder()));
+                case "fechaRegistro" -> Comparator.comparing(Paloma::getFechaRegistro, Comparator.nullsFirst(Comparator.naturalOrder()));
+                default -> Comparator.comparing(Paloma::getAnillo, Comparator.nullsFirst(Comparator.naturalOrder()));
+            };
             palomas = palomas.stream()
-                    .filter(p -> p.getAnillo().toLowerCase().contains(searchLower) ||
-                               p.getColor().toLowerCase().contains(searchLower) ||
-                               p.getLinea().toLowerCase().contains(searchLower))
+                    .sorted(descending ? comparator.reversed() : comparator)
+                    .limit(pageSize)
                     .collect(Collectors.toList());
         }
 
@@ -183,23 +248,230 @@ public class PalomaController {
     }
 
     @GetMapping("/{id}/ancestros")
-    @Operation(summary = "Obtener ancestros de la paloma")
-    public ResponseEntity<List<PalomaDTO>> getAncestors(@PathVariable String id) throws ExecutionException, InterruptedException {
-        List<Paloma> ancestors = palomaService.getAncestors(id);
+    @Operation(summary = "Obtener ancestros de la paloma", description = "Ancestros por generaciones; maxGenerations limita la profundidad. " +
+            "Las líneas que salen del palomar solo continúan en palomares a los que el usuario tiene acceso")
+    public ResponseEntity<List<PalomaDTO>> getAncestors(
+            @PathVariable String id,
+            @RequestParam(required = false) Integer maxGenerations) throws ExecutionException, InterruptedException {
+        if (maxGenerations != null && maxGenerations < 1) {
+            return ResponseEntity.badRequest().build();
+        }
+        Optional<Paloma> palomaOpt = palomaService.findById(id);
+        if (palomaOpt.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!canRead(palomaOpt.get().getPalomarId())) {
+            return ResponseEntity.status(403).build();
+        }
+        List<Paloma> ancestors = palomaService.getAncestors(palomaOpt.get(), maxGenerations != null ? maxGenerations : Integer.MAX_VALUE, readablePalomarIds());
         List<PalomaDTO> ancestorsDTO = ancestors.stream()
                 .map(this::convertToDTO)
                 .collect(Collectors.toList());
         return ResponseEntity.ok(ancestorsDTO);
     }
 
+    @GetMapping("/{id}/ancestros-comunes/{otroId}")
+    @Operation(summary = "Ancestros comunes de dos palomas", description = "Ancestros comunes más cercanos con la distancia en generaciones desde cada paloma")
+    public ResponseEntity<List<AncestroComunDTO>> getAncestrosComunes(
+            @PathVariable String id,
+            @PathVariable String otroId,
+            @RequestParam(required = false) Integer maxGenerations) throws ExecutionException, InterruptedException {
+        if (maxGenerations != null && maxGenerations < 1) {
+            return ResponseEntity.badRequest().build();
+        }
+        Optional<Paloma> palomaOpt = palomaService.findById(id);
+        Optional<Paloma> otraOpt = palomaService.findById(otroId);
+        if (palomaOpt.isEmpty() || otraOpt.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        // Both pedigrees are walked, so the caller needs access to both palomares
+        if (!canRead(palomaOpt.get().getPalomarId()) || !canRead(otraOpt.get().getPalomarId())) {
+            return ResponseEntity.status(403).build();
+        }
+        List<AncestroComunDTO> comunes = palomaService.getCommonAncestors(palomaOpt.get(), otraOpt.get(), maxGenerations != null ? maxGenerations : Integer.MAX_VALUE, readablePalomarIds()).stream()
+                .map(c -> new AncestroComunDTO(convertToDTO(c.paloma()), c.generationsA(), c.generationsB()))
+                .collect(Collectors.toList());
+        return ResponseEntity.ok(comunes);
+    }
+
     @GetMapping("/{id}/descendientes")
-    @Operation(summary = "Obtener descendientes de la paloma")
-    public ResponseEntity<List<PalomaDTO>> getDescendants(@PathVariable String id) throws ExecutionException, InterruptedException {
-        List<Paloma> descendants = palomaService.getDescendants(id);
-        List<PalomaDTO> descendantsDTO = descendants.stream()
-                .map(this::convertToDTO)
+    @Operation(summary = "Obtener descendientes de la paloma", description = "Sin depth devuelve los hijos directos; con depth devuelve el árbol de descendencia hasta esa profundidad. " +
+            "Si el árbol supera el máximo de nodos se corta y la respuesta lleva la cabecera X-Truncated: true")
+    public ResponseEntity<?> getDescendants(
+            @PathVariable String id,
+            @RequestParam(required = false) Integer depth) throws ExecutionException, InterruptedException {
+        if (depth != null && depth < 1) {
+            return ResponseEntity.badRequest().build();
+        }
+        Optional<Paloma> palomaOpt = palomaService.findById(id);
+        if (palomaOpt.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        Paloma paloma = palomaOpt.get();
+        if (!canRead(paloma.getPalomarId())) {
+            return ResponseEntity.status(403).build();
+        }
+
+        if (depth == null) {
+            List<Paloma> descendants = palomaService.getDescendants(paloma);
+            List<PalomaDTO> descendantsDTO = descendants.stream()
+                    .map(this::convertToDTO)
+                    .collect(Collectors.toList());
+            return ResponseEntity.ok(descendantsDTO);
+        }
+        PalomaService.DescendantTree tree = palomaService.getDescendantTree(paloma, depth);
+        List<DescendienteDTO> treeDTO = tree.children().stream()
+                .map(this::convertToDescendienteDTO)
+                .collect(Collectors.toList());
+        return ResponseEntity.ok()
+                .header("X-Truncated", String.valueOf(tree.truncated()))
+                .body(treeDTO);
+    }
+
+    @GetMapping("/{id}/consanguinidad")
+    @Operation(summary = "Coeficiente de consanguinidad", description = "Coeficiente de Wright de la paloma según el pedigrí de su palomar")
+    public ResponseEntity<ConsanguinidadDTO> getConsanguinidad(@PathVariable String id) throws ExecutionException, InterruptedException {
+        Optional<Paloma> palomaOpt = palomaService.findById(id);
+        if (palomaOpt.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        Paloma paloma = palomaOpt.get();
+        if (!canRead(paloma.getPalomarId())) {
+            return ResponseEntity.status(403).build();
+        }
+
+        OptionalDouble coeficiente = kinshipService.inbreeding(paloma.getPalomarId(), id);
+        if (coeficiente.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(new ConsanguinidadDTO(id, paloma.getAnillo(), coeficiente.getAsDouble()));
+    }
+
+    @GetMapping("/{id}/parentesco/{otroId}")
+    @Operation(summary = "Coeficiente de parentesco", description = "Coeficiente de parentesco entre dos palomas del mismo palomar")
+    public ResponseEntity<ParentescoDTO> getParentesco(@PathVariable String id, @PathVariable String otroId) throws ExecutionException, InterruptedException {
+        Optional<Paloma> palomaOpt = palomaService.findById(id);
+        Optional<Paloma> otraOpt = palomaService.findById(otroId);
+        if (palomaOpt.isEmpty() || otraOpt.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        String palomarId = palomaOpt.get().getPalomarId();
+        if (!canRead(palomarId)) {
+            return ResponseEntity.status(403).build();
+        }
+        if (!Objects.equals(palomarId, otraOpt.get().getPalomarId())) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        OptionalDouble coeficiente = kinshipService.relationship(palomarId, id, otroId);
+        if (coeficiente.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(new ParentescoDTO(id, otroId, coeficiente.getAsDouble()));
+    }
+
+    @GetMapping("/informe-consanguinidad")
+    @Operation(summary = "Informe de consanguinidad", description = "Coeficiente de consanguinidad de todas las palomas del palomar, de mayor a menor")
+    public ResponseEntity<List<ConsanguinidadDTO>> getInformeConsanguinidad(@RequestParam(required = false) String palomarId) throws ExecutionException, InterruptedException {
+        PalomarContext palomarContext = (PalomarContext) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        String targetPalomarId = palomarId != null ? palomarId : palomarContext.getPalomarId();
+        if (!canRead(targetPalomarId)) {
+            return ResponseEntity.status(403).build();
+        }
+
+        List<ConsanguinidadDTO> informe = kinshipService.inbreedingReport(targetPalomarId).stream()
+                .map(i -> new ConsanguinidadDTO(i.palomaId(), i.anillo(), i.coeficiente()))
                 .collect(Collectors.toList());
-        return ResponseEntity.ok(descendantsDTO);
+        return ResponseEntity.ok(informe);
+    }
+
+    @GetMapping("/parejas-recomendadas")
+    @Operation(summary = "Recomendar parejas", description = "Parejas macho x hembra ordenadas por la consanguinidad esperada de su descendencia, " +
+            "con filtros opcionales de linea y estado (p. ej. Reproductora)")
+    public ResponseEntity<List<ParejaRecomendadaDTO>> getParejasRecomendadas(
+            @RequestParam(required = false) String palomarId,
+            @RequestParam(required = false) String linea,
+            @RequestParam(required = false) String estado,
+            @RequestParam(required = false) Integer limit) throws ExecutionException, InterruptedException {
+        PalomarContext palomarContext = (PalomarContext) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        String targetPalomarId = palomarId != null ? palomarId : palomarContext.getPalomarId();
+        if (!canRead(targetPalomarId)) {
+            return ResponseEntity.status(403).build();
+        }
+        if (limit != null && limit < 1) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        int pageSize = limit != null ? Math.min(limit, MAX_PAGE_SIZE) : DEFAULT_PAGE_SIZE;
+        List<ParejaRecomendadaDTO> parejas = breedingPairService.recommend(targetPalomarId, linea, estado, pageSize).stream()
+                .map(p -> new ParejaRecomendadaDTO(convertToDTO(p.macho()), convertToDTO(p.hembra()), p.consanguinidadEsperada()))
+                .collect(Collectors.toList());
+        return ResponseEntity.ok(parejas);
+    }
+
+    @PostMapping("/pedigri/reconstruir")
+    @Operation(summary = "Reconstruir pedigrí del palomar", description = "Recalcula el cierre de ancestros de todas las palomas del palomar. Solo el propietario")
+    public ResponseEntity<Integer> reconstruirPedigri(@RequestParam(required = false) String palomarId) throws ExecutionException, InterruptedException {
+        PalomarContext palomarContext = (PalomarContext) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        String targetPalomarId = palomarId != null ? palomarId : palomarContext.getPalomarId();
+        // A rebuild rewrites every closure document of the palomar
+        Optional<String> rol = targetPalomarId != null
+                ? usuarioPalomarService.getRolInPalomar(palomarContext.getUsuario().getId(), targetPalomarId)
+                : Optional.empty();
+        if (rol.isEmpty() || !"PROPIETARIO".equals(rol.get())) {
+            return ResponseEntity.status(403).build();
+        }
+        return ResponseEntity.ok(pedigreeClosureService.rebuild(targetPalomarId));
+    }
+
+    @GetMapping("/integridad")
+    @Operation(summary = "Revisar integridad del pedigrí", description = "Padres inexistentes, padres con sexo incorrecto, anillos duplicados y ciclos. " +
+            "Con ultimo=true devuelve el último informe generado en lugar de revisar de nuevo")
+    public ResponseEntity<IntegridadReporteDTO> getIntegridad(
+            @RequestParam(required = false) String palomarId,
+            @RequestParam(defaultValue = "false") boolean ultimo) throws ExecutionException, InterruptedException {
+        PalomarContext palomarContext = (PalomarContext) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        String targetPalomarId = palomarId != null ? palomarId : palomarContext.getPalomarId();
+        if (!canRead(targetPalomarId)) {
+            return ResponseEntity.status(403).build();
+        }
+
+        PedigreeIntegrityService.Reporte reporte;
+        if (ultimo) {
+            Optional<PedigreeIntegrityService.Reporte> latest = pedigreeIntegrityService.getLatestReport(targetPalomarId);
+            if (latest.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            reporte = latest.get();
+        } else {
+            reporte = pedigreeIntegrityService.scan(targetPalomarId);
+        }
+        List<IncidenciaDTO> incidencias = reporte.incidencias().stream()
+                .map(i -> new IncidenciaDTO(i.tipo().name(), i.palomaId(), i.anillo(), i.detalle()))
+                .collect(Collectors.toList());
+        return ResponseEntity.ok(new IntegridadReporteDTO(reporte.palomarId(), reporte.palomasRevisadas(), incidencias, reporte.fecha()));
+    }
+
+    private boolean canRead(String palomarId) throws ExecutionException, InterruptedException {
+        PalomarContext palomarContext = (PalomarContext) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        return palomarId != null && usuarioPalomarService.hasAccessToPalomar(palomarContext.getUsuario().getId(), palomarId);
+    }
+
+    // Palomares the caller belongs to, for pedigree walks that cross palomar boundaries
+    private Set<String> readablePalomarIds() throws ExecutionException, InterruptedException {
+        PalomarContext palomarContext = (PalomarContext) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        return usuarioPalomarService.findByUsuarioId(palomarContext.getUsuario().getId()).stream()
+                .map(UsuarioPalomar::getPalomarId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+    }
+
+    private DescendienteDTO convertToDescendienteDTO(PalomaService.DescendantNode node) {
+        return new DescendienteDTO(
+            convertToDTO(node.paloma()),
+            node.generation(),
+            node.children().stream().map(this::convertToDescendienteDTO).collect(Collectors.toList())
+        );
     }
 
     private PalomaDTO convertToDTO(Paloma paloma) {
@@ -19,8 +19,10 @@ import org.springframework.web.bind.annotation.*;
 import java.util.Optional;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @RestController
@@ -49,26 +51,26 @@ public class PalomarController {
         List<UsuarioPalomar> userPalomares = usuarioPalomarService.findByUsuarioId(usuario.getId());
         System.out.println("PalomarController: Found " + userPalomares.size() + " palomar relationships");
 
+        // Fetch every palomar in a single batched read
+        List<String> palomarIds = userPalomares.stream()
+                .map(UsuarioPalomar::getPalomarId)
+                .toList();
+        Map<String, Palomar> palomaresById = palomarService.findAllByIds(palomarIds).stream()
+                .collect(Collectors.toMap(Palomar::getId, Function.identity(), (a, b) -> a));
+
         List<PalomarDTO> palomaresDTO = userPalomares.stream()
+                .filter(userPalomar -> palomaresById.containsKey(userPalomar.getPalomarId()))
                 .map(userPalomar -> {
-                    try {
-                        Palomar palomar = palomarService.findById(userPalomar.getPalomarId()).orElse(null);
-                        if (palomar != null) {
-                            return new PalomarDTO(
-                                palomar.getId(),
-                                palomar.getNombre(),
-                                palomar.getAlias(),
-                                palomar.getPropietarioId(),
-                                userPalomar.getRol(),
-                                palomar.getFechaCreacion()
-                            );
-                        }
-                    } catch (ExecutionException | InterruptedException e) {
-                        // Log error but continue
-                    }
-                    return null;
+                    Palomar palomar = palomaresById.get(userPalomar.getPalomarId());
+                    return new PalomarDTO(
+                        palomar.getId(),
+                        palomar.getNombre(),
+                        palomar.getAlias(),
+                        palomar.getPropietarioId(),
+                        userPalomar.getRol(),
+                        palomar.getFechaCreacion()
+                    );
                 })
-                .filter(dto -> dto != null)
                 .collect(Collectors.toList());
 
         return ResponseEntity.ok(palomaresDTO);
@@ -118,35 +120,35 @@ public class PalomarController {
         // Get all users with access to this palomar
         List<UsuarioPalomar> accesos = usuarioPalomarService.findByPalomarId(id);
 
+        // Get user information for every collaborator in a single batched read
+        Map<String, Usuario> usuariosById;
+        try {
+            List<String> usuarioIds = accesos.stream()
+                    .map(UsuarioPalomar::getUsuarioId)
+                    .toList();
+            usuariosById = usuarioService.findAllByIds(usuarioIds).stream()
+                    .collect(Collectors.toMap(Usuario::getId, Function.identity(), (a, b) -> a));
+        } catch (ExecutionException e) {
+            // Fallback if user lookup fails
+            usuariosById = Map.of();
+        }
+
+        Map<String, Usuario> usuarios = usuariosById;
         List<UsuarioPalomarDTO> accesosDTO = accesos.stream()
                 .map(acceso -> {
-                    try {
-                        // Get user information
-                        Optional<Usuario> usuarioOpt = usuarioService.findById(acceso.getUsuarioId());
-                        String usuarioNombre = usuarioOpt.map(Usuario::getNombre).orElse("Usuario desconocido");
-                        String usuarioEmail = usuarioOpt.map(Usuario::getEmail).orElse(acceso.getUsuarioId());
-
-                        return new UsuarioPalomarDTO(
-                            acceso.getId(),
-                            acceso.getUsuarioId(),
-                            usuarioNombre,
-                            usuarioEmail,
-                            acceso.getPalomarId(),
-                            acceso.getRol(),
-                            acceso.getFechaAutorizacion()
-                        );
-                    } catch (ExecutionException | InterruptedException e) {
-                        // Fallback if user lookup fails
-                        return new UsuarioPalomarDTO(
-                            acceso.getId(),
-                            acceso.getUsuarioId(),
-                            "Usuario desconocido",
-                            acceso.getUsuarioId(),
-                            acceso.getPalomarId(),
-                            acceso.getRol(),
-                            acceso.getFechaAutorizacion()
-                        );
-                    }
+                    Optional<Usuario> usuarioOpt = Optional.ofNullable(usuarios.get(acceso.getUsuarioId()));
+                    String usuarioNombre = usuarioOpt.map(Usuario::getNombre).orElse("Usuario desconocido");
+                    String usuarioEmail = usuarioOpt.map(Usuario::getEmail).orElse(acceso.getUsuarioId());
+
+                    return new UsuarioPalomarDTO(
+                        acceso.getId(),
+                        acceso.getUsuarioId(),
+                        usuarioNombre,
+                        usuarioEmail,
+                        acceso.getPalomarId(),
+                        acceso.getRol(),
+                        acceso.getFechaAutorizacion()
+                    );
                 })
                 .collect(Collectors.toList());
 
@@ -224,10 +226,7 @@ public class PalomarController {
         }
 
         // Find and delete the relationship
-        Optional<UsuarioPalomar> relacion = usuarioPalomarService.findByUsuarioIdAndPalomarId(usuarioId, id);
-        if (relacion.isPresent()) {
-            usuarioPalomarService.deleteById(relacion.get().getId());
-        }
+        usuarioPalomarService.revokeAccess(usuarioId, id);
 
         return ResponseEntity.ok().build();
     }
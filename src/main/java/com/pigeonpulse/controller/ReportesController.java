@@ -1,51 +1,85 @@
 package com.pigeonpulse.controller;
 
-import com.itextpdf.kernel.pdf.PdfDocument;
-import com.itextpdf.kernel.pdf.PdfWriter;
-import com.itextpdf.layout.Document;
-import com.itextpdf.layout.element.Paragraph;
-import com.itextpdf.layout.element.Table;
-import com.itextpdf.layout.properties.TextAlignment;
-import com.itextpdf.layout.properties.UnitValue;
-import com.pigeonpulse.model.Paloma;
+import com.pigeonpulse.dto.AgregacionDTO;
+import com.pigeonpulse.dto.CensoRequest;
+import com.pigeonpulse.dto.DashboardDTO;
+import com.pigeonpulse.dto.GrupoAgregadoDTO;
+import com.pigeonpulse.dto.PalomarResumenDTO;
+import com.pigeonpulse.dto.PuntoSerieDTO;
+import com.pigeonpulse.dto.ReportJobDTO;
+import com.pigeonpulse.dto.SerieDTO;
 import com.pigeonpulse.model.Palomar;
 import com.pigeonpulse.model.Usuario;
 import com.pigeonpulse.security.PalomarContext;
-import com.pigeonpulse.service.PalomaService;
+import com.pigeonpulse.service.CensoPdfCache;
+import com.pigeonpulse.service.CensoPdfService;
+import com.pigeonpulse.service.PalomaAggregationService;
+import com.pigeonpulse.service.PalomarDashboardService;
+import com.pigeonpulse.service.PalomarSeriesService;
 import com.pigeonpulse.service.PalomarService;
+import com.pigeonpulse.service.PalomarStatsService;
+import com.pigeonpulse.service.PalomarVersionService;
+import com.pigeonpulse.service.ReportJobService;
 import com.pigeonpulse.service.UsuarioPalomarService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.ExecutionException;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/reportes")
 @Tag(name = "Reportes", description = "API para reportes y estadísticas")
 public class ReportesController {
 
-    @Autowired
-    private PalomaService palomaService;
-
     @Autowired
     private UsuarioPalomarService usuarioPalomarService;
 
     @Autowired
     private PalomarService palomarService;
 
+    @Autowired
+    private CensoPdfService censoPdfService;
+
+    @Autowired
+    private ReportJobService reportJobService;
+
+    @Autowired
+    private CensoPdfCache censoPdfCache;
+
+    private static final int MAX_SERIE_AÑOS = 100;
+
+    @Autowired
+    private PalomarVersionService palomarVersionService;
+
+    @Autowired
+    private PalomarStatsService palomarStatsService;
+
+    @Autowired
+    private PalomaAggregationService palomaAggregationService;
+
+    @Autowired
+    private PalomarDashboardService palomarDashboardService;
+
+    @Autowired
+    private PalomarSeriesService palomarSeriesService;
+
     @GetMapping("/estadisticas")
     @Operation(summary = "Obtener estadísticas generales")
     public ResponseEntity<Map<String, Object>> getEstadisticas(@RequestParam(required = false) String palomarId) throws ExecutionException, InterruptedException {
@@ -61,178 +95,259 @@ public class ReportesController {
             return ResponseEntity.status(403).build();
         }
 
-        List<Paloma> palomas = palomaService.findByPalomarId(targetPalomarId);
+        // Counters are maintained on every write, this is a single document read
+        Map<String, Object> estadisticas = palomarStatsService.getEstadisticas(targetPalomarId);
 
-        long total = palomas.size();
-        long enCarrera = palomas.stream().filter(p -> "Activa en carrera".equals(p.getEstado())).count();
-        long reproductoras = palomas.stream().filter(p -> "Reproductora".equals(p.getEstado())).count();
-        long otras = palomas.stream().filter(p -> "Otra".equals(p.getEstado())).count();
+        return ResponseEntity.ok(estadisticas);
+    }
 
-        Map<String, Long> porSexo = palomas.stream()
-                .filter(p -> p.getSexo() != null)
-                .collect(Collectors.groupingBy(Paloma::getSexo, Collectors.counting()));
+    @GetMapping("/dashboard")
+    @Operation(summary = "Estadísticas de todos mis palomares", description = "Estadísticas de cada palomar al que el usuario tiene acceso y su suma. " +
+            "Los palomares que no responden a tiempo aparecen con estado TIEMPO_AGOTADO y completo=false; " +
+            "los que aún no tienen estadísticas calculadas aparecen con estado SIN_INICIALIZAR mientras se calculan")
+    public ResponseEntity<DashboardDTO> getDashboard() throws ExecutionException, InterruptedException {
+        PalomarContext palomarContext = (PalomarContext) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        Usuario usuario = palomarContext.getUsuario();
 
-        Map<String, Long> porLinea = palomas.stream()
-                .filter(p -> p.getLinea() != null)
-                .collect(Collectors.groupingBy(Paloma::getLinea, Collectors.counting()));
+        PalomarDashboardService.Dashboard dashboard = palomarDashboardService.getDashboard(usuario.getId());
+        List<PalomarResumenDTO> palomares = dashboard.palomares().stream()
+                .map(loft -> new PalomarResumenDTO(
+                    loft.palomarId(),
+                    loft.nombre(),
+                    loft.rol(),
+                    loft.estado().name(),
+                    loft.estadisticas() != null ? loft.estadisticas().toMap() : null
+                ))
+                .toList();
+        return ResponseEntity.ok(new DashboardDTO(palomares, dashboard.combinado().toMap(), dashboard.completo()));
+    }
 
-        Map<String, Object> estadisticas = Map.of(
-            "totalPalomas", total,
-            "palomasEnCarrera", enCarrera,
-            "palomasReproductoras", reproductoras,
-            "palomasOtras", otras,
-            "palomasPorLinea", porLinea,
-            "palomasPorSexo", porSexo
-        );
+    @PostMapping("/estadisticas/recalcular")
+    @Operation(summary = "Recalcular estadísticas del palomar", description = "Vuelve a contar todas las palomas y reemplaza los contadores guardados")
+    public ResponseEntity<Map<String, Object>> recalcularEstadisticas(@RequestParam(required = false) String palomarId) throws ExecutionException, InterruptedException {
+        PalomarContext palomarContext = (PalomarContext) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        Usuario usuario = palomarContext.getUsuario();
+        String targetPalomarId = palomarId != null ? palomarId : palomarContext.getPalomarId();
 
-        return ResponseEntity.ok(estadisticas);
+        boolean hasAccess = usuarioPalomarService.hasAccessToPalomar(usuario.getId(), targetPalomarId);
+        if (!hasAccess) {
+            return ResponseEntity.status(403).build();
+        }
+
+        palomarStatsService.reconcile(targetPalomarId);
+        return ResponseEntity.ok(palomarStatsService.getEstadisticas(targetPalomarId));
     }
 
-    @PostMapping("/censo/pdf")
-    @Operation(summary = "Generar censo en PDF")
-    public ResponseEntity<byte[]> generarCensoPDF(@RequestBody CensoRequest request) throws ExecutionException, InterruptedException, IOException {
+    @GetMapping("/agregacion")
+    @Operation(summary = "Tabla cruzada de palomas", description = "Cuenta las palomas del palomar agrupadas por cualquier combinación de " +
+            "estado, sexo, linea, año, color y tipoOjo, por ejemplo dimensiones=linea,año")
+    public ResponseEntity<AgregacionDTO> getAgregacion(
+            @RequestParam List<String> dimensiones,
+            @RequestParam(required = false) String palomarId) throws ExecutionException, InterruptedException {
         PalomarContext palomarContext = (PalomarContext) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
         Usuario usuario = palomarContext.getUsuario();
+        String targetPalomarId = palomarId != null ? palomarId : palomarContext.getPalomarId();
 
-        // Use provided palomarId or default to JWT context
-        String targetPalomarId = request.palomarId() != null ? request.palomarId() : palomarContext.getPalomarId();
-
-        // Verify user has access to the target palomar
         boolean hasAccess = usuarioPalomarService.hasAccessToPalomar(usuario.getId(), targetPalomarId);
         if (!hasAccess) {
             return ResponseEntity.status(403).build();
         }
 
-        // Get palomar info for header
-        Palomar palomar = palomarService.findById(targetPalomarId).orElseThrow();
+        List<PalomaAggregationService.Dimension> dimensions = new ArrayList<>();
+        try {
+            for (String dimension : dimensiones) {
+                PalomaAggregationService.Dimension parsed = PalomaAggregationService.Dimension.fromCampo(dimension.trim());
+                if (!dimensions.contains(parsed)) {
+                    dimensions.add(parsed);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (dimensions.isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
 
-        // Get filtered palomas
-        List<Paloma> palomas = getFilteredPalomas(targetPalomarId, request);
+        PalomaAggregationService.Resultado resultado = palomaAggregationService.aggregate(targetPalomarId, dimensions);
+        List<GrupoAgregadoDTO> grupos = resultado.grupos().stream()
+                .map(grupo -> {
+                    // LinkedHashMap keeps the requested order and allows null (empty field) values
+                    Map<String, String> valores = new LinkedHashMap<>();
+                    for (int i = 0; i < resultado.dimensiones().size(); i++) {
+                        valores.put(resultado.dimensiones().get(i), grupo.valores().get(i));
+                    }
+                    return new GrupoAgregadoDTO(valores, grupo.cantidad());
+                })
+                .toList();
+        return ResponseEntity.ok(new AgregacionDTO(targetPalomarId, resultado.dimensiones(), resultado.total(), grupos));
+    }
 
-        // Generate PDF
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        PdfWriter writer = new PdfWriter(baos);
-        PdfDocument pdfDoc = new PdfDocument(writer);
-        Document document = new Document(pdfDoc);
+    @GetMapping("/series/registro")
+    @Operation(summary = "Palomas registradas por mes o año", description = "Serie por fecha de registro entre los años desde y hasta " +
+            "(por defecto los últimos 10), con desglose por estado y sexo. granularidad: MES o AÑO")
+    public ResponseEntity<SerieDTO> getSerieRegistro(
+            @RequestParam(required = false) String palomarId,
+            @RequestParam(defaultValue = "MES") PalomarSeriesService.Granularidad granularidad,
+            @RequestParam(required = false) Integer desde,
+            @RequestParam(required = false) Integer hasta) throws ExecutionException, InterruptedException {
+        PalomarContext palomarContext = (PalomarContext) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        Usuario usuario = palomarContext.getUsuario();
+        String targetPalomarId = palomarId != null ? palomarId : palomarContext.getPalomarId();
 
-        // Header
-        document.add(new Paragraph("Documento generado por PalomaApp")
-                .setTextAlignment(TextAlignment.CENTER)
-                .setFontSize(16)
-                .setBold());
+        boolean hasAccess = usuarioPalomarService.hasAccessToPalomar(usuario.getId(), targetPalomarId);
+        if (!hasAccess) {
+            return ResponseEntity.status(403).build();
+        }
 
-        document.add(new Paragraph("Censo de Palomas")
-                .setTextAlignment(TextAlignment.CENTER)
-                .setFontSize(14)
-                .setBold());
+        int hastaAño = hasta != null ? hasta : Year.now().getValue();
+        int desdeAño = desde != null ? desde : hastaAño - 9;
+        if (desdeAño > hastaAño || hastaAño - desdeAño >= MAX_SERIE_AÑOS) {
+            return ResponseEntity.badRequest().build();
+        }
 
-        document.add(new Paragraph("Palomar: " + palomar.getNombre())
-                .setTextAlignment(TextAlignment.LEFT));
+        List<PuntoSerieDTO> puntos = palomarSeriesService.getRegistro(targetPalomarId, granularidad, desdeAño, hastaAño).stream()
+                .map(this::convertToPuntoDTO)
+                .toList();
+        return ResponseEntity.ok(new SerieDTO(targetPalomarId, "registro", granularidad.name(), puntos));
+    }
 
-        document.add(new Paragraph("Propietario: " + request.nombrePropietario())
-                .setTextAlignment(TextAlignment.LEFT));
+    @GetMapping("/series/nacimiento")
+    @Operation(summary = "Palomas por año de nacimiento", description = "Serie por año de nacimiento entre desde y hasta " +
+            "(por defecto los últimos 10), con desglose por estado y sexo")
+    public ResponseEntity<SerieDTO> getSerieNacimiento(
+            @RequestParam(required = false) String palomarId,
+            @RequestParam(required = false) Integer desde,
+            @RequestParam(required = false) Integer hasta) throws ExecutionException, InterruptedException {
+        PalomarContext palomarContext = (PalomarContext) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        Usuario usuario = palomarContext.getUsuario();
+        String targetPalomarId = palomarId != null ? palomarId : palomarContext.getPalomarId();
 
-        if (request.telefono() != null && !request.telefono().isEmpty()) {
-            document.add(new Paragraph("Teléfono: " + request.telefono())
-                    .setTextAlignment(TextAlignment.LEFT));
+        boolean hasAccess = usuarioPalomarService.hasAccessToPalomar(usuario.getId(), targetPalomarId);
+        if (!hasAccess) {
+            return ResponseEntity.status(403).build();
         }
 
-        if (request.domicilio() != null && !request.domicilio().isEmpty()) {
-            document.add(new Paragraph("Domicilio: " + request.domicilio())
-                    .setTextAlignment(TextAlignment.LEFT));
+        int hastaAño = hasta != null ? hasta : Year.now().getValue();
+        int desdeAño = desde != null ? desde : hastaAño - 9;
+        if (desdeAño > hastaAño || hastaAño - desdeAño >= MAX_SERIE_AÑOS) {
+            return ResponseEntity.badRequest().build();
         }
 
-        document.add(new Paragraph("Fecha de generación: " +
-                LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm")))
-                .setTextAlignment(TextAlignment.LEFT));
-
-        document.add(new Paragraph(" ")); // Empty line
-
-        // Create table
-        Table table = new Table(UnitValue.createPercentArray(new float[]{8, 6, 8, 8, 8, 8, 8, 8, 8}))
-                .useAllAvailableWidth();
-
-        // Headers
-        table.addHeaderCell("Anillo");
-        table.addHeaderCell("Año");
-        table.addHeaderCell("Sexo");
-        table.addHeaderCell("Color");
-        table.addHeaderCell("Línea");
-        table.addHeaderCell("Estado");
-        table.addHeaderCell("Padre");
-        table.addHeaderCell("Madre");
-        table.addHeaderCell("Observaciones");
-
-        // Data rows
-        for (Paloma paloma : palomas) {
-            table.addCell(paloma.getAnillo() != null ? paloma.getAnillo() : "");
-            table.addCell(paloma.getAño() != null ? paloma.getAño().toString() : "");
-            table.addCell(paloma.getSexo() != null ? paloma.getSexo() : "");
-            table.addCell(paloma.getColor() != null ? paloma.getColor() : "");
-            table.addCell(paloma.getLinea() != null ? paloma.getLinea() : "");
-            table.addCell(paloma.getEstado() != null ? paloma.getEstado() : "");
-            table.addCell(paloma.getPadre() != null ? paloma.getPadre() : "");
-            table.addCell(paloma.getMadre() != null ? paloma.getMadre() : "");
-            table.addCell(paloma.getObservaciones() != null ? paloma.getObservaciones() : "");
-        }
+        List<PuntoSerieDTO> puntos = palomarSeriesService.getNacimiento(targetPalomarId, desdeAño, hastaAño).stream()
+                .map(this::convertToPuntoDTO)
+                .toList();
+        return ResponseEntity.ok(new SerieDTO(targetPalomarId, "nacimiento", PalomarSeriesService.Granularidad.AÑO.name(), puntos));
+    }
+
+    @PostMapping("/censo/pdf")
+    @Operation(summary = "Generar censo en PDF")
+    public ResponseEntity<StreamingResponseBody> generarCensoPDF(
+            @RequestBody CensoRequest request,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) throws ExecutionException, InterruptedException {
+        PalomarContext palomarContext = (PalomarContext) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        Usuario usuario = palomarContext.getUsuario();
+
+        // Use provided palomarId or default to JWT context
+        String targetPalomarId = request.palomarId() != null ? request.palomarId() : palomarContext.getPalomarId();
 
-        document.add(table);
+        // Verify user has access to the target palomar
+        boolean hasAccess = usuarioPalomarService.hasAccessToPalomar(usuario.getId(), targetPalomarId);
+        if (!hasAccess) {
+            return ResponseEntity.status(403).build();
+        }
 
-        // Footer
-        document.add(new Paragraph(" "));
-        document.add(new Paragraph("Total de palomas: " + palomas.size())
-                .setTextAlignment(TextAlignment.LEFT));
+        // Get palomar info for header
+        Palomar palomar = palomarService.findById(targetPalomarId).orElseThrow();
 
-        document.close();
+        // Same palomar data version, same request fields and same day produce the same document;
+        // the day is part of the key because the PDF prints its generation date
+        long version = palomarVersionService.getVersion(targetPalomarId);
+        LocalDate fechaGeneracion = LocalDate.now();
+        String key = CensoPdfCache.key(targetPalomarId, version, fechaGeneracion, palomar.getNombre(), request);
+        String etag = "\"" + key + "\"";
+        if (ifNoneMatch != null && (ifNoneMatch.contains(etag) || ifNoneMatch.trim().equals("*"))) {
+            return ResponseEntity.status(304).eTag(etag).build();
+        }
 
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_PDF);
         headers.setContentDispositionFormData("attachment", "censo_palomas.pdf");
-
+        headers.setETag(etag);
+        headers.setCacheControl("private, no-cache");
+
+        // The PDF is written straight to the response while palomas are read page by page,
+        // and kept in the cache for the next identical request
+        Optional<Path> cached = censoPdfCache.get(key);
+        StreamingResponseBody body = outputStream -> {
+            if (cached.isPresent() && censoPdfCache.copyTo(cached.get(), outputStream)) {
+                return;
+            }
+            censoPdfCache.writeThrough(key, outputStream, out -> censoPdfService.writeCenso(out, palomar, targetPalomarId, request, fechaGeneracion));
+        };
         return ResponseEntity.ok()
                 .headers(headers)
-                .body(baos.toByteArray());
+                .body(body);
     }
 
+    @PostMapping("/censo/pdf/jobs")
+    @Operation(summary = "Encolar censo en PDF", description = "Genera el censo en segundo plano; consultar el estado en /api/reportes/jobs/{id}")
+    public ResponseEntity<ReportJobDTO> encolarCensoPDF(@RequestBody CensoRequest request) throws ExecutionException, InterruptedException {
+        PalomarContext palomarContext = (PalomarContext) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        Usuario usuario = palomarContext.getUsuario();
 
-    public record Filtros(
-        Integer año,
-        String linea,
-        String estado
-    ) {}
-
-    public record CensoRequest(
-        String nombrePropietario,
-        String telefono,
-        String domicilio,
-        Filtros filtros,
-        String palomarId
-    ) {}
-
-    private List<Paloma> getFilteredPalomas(String palomarId, CensoRequest request) throws ExecutionException, InterruptedException {
-        List<Paloma> palomas = palomaService.findByPalomarId(palomarId);
-
-        // Apply filters from nested filtros object
-        if (request.filtros() != null) {
-            if (request.filtros().año() != null) {
-                palomas = palomas.stream()
-                        .filter(p -> request.filtros().año().equals(p.getAño()))
-                        .collect(Collectors.toList());
-            }
+        // Use provided palomarId or default to JWT context
+        String targetPalomarId = request.palomarId() != null ? request.palomarId() : palomarContext.getPalomarId();
 
-            if (request.filtros().estado() != null && !request.filtros().estado().isEmpty()) {
-                palomas = palomas.stream()
-                        .filter(p -> request.filtros().estado().equals(p.getEstado()))
-                        .collect(Collectors.toList());
-            }
+        // Verify user has access to the target palomar
+        boolean hasAccess = usuarioPalomarService.hasAccessToPalomar(usuario.getId(), targetPalomarId);
+        if (!hasAccess) {
+            return ResponseEntity.status(403).build();
+        }
 
-            if (request.filtros().linea() != null && !request.filtros().linea().isEmpty()) {
-                palomas = palomas.stream()
-                        .filter(p -> request.filtros().linea().equals(p.getLinea()))
-                        .collect(Collectors.toList());
-            }
+        Palomar palomar = palomarService.findById(targetPalomarId).orElseThrow();
+        try {
+            ReportJobService.ReportJob job = reportJobService.submitCenso(usuario.getId(), palomar, request);
+            return ResponseEntity.accepted().body(convertToDTO(job));
+        } catch (ReportJobService.TooManyJobsException e) {
+            return ResponseEntity.status(429).build();
         }
+    }
+
+    @GetMapping("/jobs/{id}")
+    @Operation(summary = "Estado de un reporte en segundo plano")
+    public ResponseEntity<ReportJobDTO> getJob(@PathVariable String id) {
+        PalomarContext palomarContext = (PalomarContext) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        return reportJobService.find(id, palomarContext.getUsuario().getId())
+                .map(job -> ResponseEntity.ok(convertToDTO(job)))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @GetMapping("/jobs/{id}/descarga")
+    @Operation(summary = "Descargar un reporte terminado")
+    public ResponseEntity<Resource> descargarJob(@PathVariable String id) {
+        PalomarContext palomarContext = (PalomarContext) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        Optional<ReportJobService.ReportJob> jobOpt = reportJobService.find(id, palomarContext.getUsuario().getId());
+        if (jobOpt.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        ReportJobService.ReportJob job = jobOpt.get();
+        if (job.estado() != ReportJobService.Estado.COMPLETADO) {
+            return ResponseEntity.status(409).build();
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_PDF);
+        headers.setContentDispositionFormData("attachment", "censo_palomas.pdf");
+        return ResponseEntity.ok()
+                .headers(headers)
+                .body(new FileSystemResource(reportJobService.resultPath(job)));
+    }
+
+    private ReportJobDTO convertToDTO(ReportJobService.ReportJob job) {
+        return new ReportJobDTO(job.id(), job.estado().name(), job.palomarId(), job.creado(), job.terminado(), job.error());
+    }
 
-        return palomas;
+    private PuntoSerieDTO convertToPuntoDTO(PalomarSeriesService.Punto punto) {
+        return new PuntoSerieDTO(punto.periodo(), punto.total(), punto.porEstado(), punto.porSexo());
     }
-}
\ No newline at end of file
+}
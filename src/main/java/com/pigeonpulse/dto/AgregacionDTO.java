@@ -0,0 +1,11 @@
+package com.pigeonpulse.dto;
+
+import java.util.List;
+
+public record AgregacionDTO(
+    String palomarId,
+    List<String> dimensiones,
+    long totalPalomas,
+    List<GrupoAgregadoDTO> grupos
+) {
+}
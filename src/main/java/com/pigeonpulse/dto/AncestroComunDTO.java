@@ -0,0 +1,8 @@
+package com.pigeonpulse.dto;
+
+public record AncestroComunDTO(
+    PalomaDTO paloma,
+    int generacionesA,
+    int generacionesB
+) {
+}
@@ -0,0 +1,10 @@
+package com.pigeonpulse.dto;
+
+public record CensoRequest(
+    String nombrePropietario,
+    String telefono,
+    String domicilio,
+    Filtros filtros,
+    String palomarId
+) {
+}
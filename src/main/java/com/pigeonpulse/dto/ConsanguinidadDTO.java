@@ -0,0 +1,8 @@
+package com.pigeonpulse.dto;
+
+public record ConsanguinidadDTO(
+    String palomaId,
+    String anillo,
+    double coeficiente
+) {
+}
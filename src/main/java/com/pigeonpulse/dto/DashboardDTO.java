@@ -0,0 +1,11 @@
+package com.pigeonpulse.dto;
+
+import java.util.List;
+import java.util.Map;
+
+public record DashboardDTO(
+    List<PalomarResumenDTO> palomares,
+    Map<String, Object> combinado,
+    boolean completo
+) {
+}
@@ -0,0 +1,10 @@
+package com.pigeonpulse.dto;
+
+import java.util.List;
+
+public record DescendienteDTO(
+    PalomaDTO paloma,
+    int generacion,
+    List<DescendienteDTO> descendientes
+) {
+}
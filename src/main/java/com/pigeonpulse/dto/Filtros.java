@@ -0,0 +1,8 @@
+package com.pigeonpulse.dto;
+
+public record Filtros(
+    Integer año,
+    String linea,
+    String estado
+) {
+}
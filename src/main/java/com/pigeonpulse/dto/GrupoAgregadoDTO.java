@@ -0,0 +1,9 @@
+package com.pigeonpulse.dto;
+
+import java.util.Map;
+
+public record GrupoAgregadoDTO(
+    Map<String, String> valores,
+    long cantidad
+) {
+}
@@ -0,0 +1,9 @@
+package com.pigeonpulse.dto;
+
+public record IncidenciaDTO(
+    String tipo,
+    String palomaId,
+    String anillo,
+    String detalle
+) {
+}
@@ -0,0 +1,12 @@
+package com.pigeonpulse.dto;
+
+import java.time.Instant;
+import java.util.List;
+
+public record IntegridadReporteDTO(
+    String palomarId,
+    int palomasRevisadas,
+    List<IncidenciaDTO> incidencias,
+    Instant fecha
+) {
+}
@@ -0,0 +1,12 @@
+package com.pigeonpulse.dto;
+
+import java.util.Map;
+
+public record PalomarResumenDTO(
+    String palomarId,
+    String nombre,
+    String rol,
+    String estado,
+    Map<String, Object> estadisticas
+) {
+}
@@ -0,0 +1,8 @@
+package com.pigeonpulse.dto;
+
+public record ParejaRecomendadaDTO(
+    PalomaDTO macho,
+    PalomaDTO hembra,
+    double consanguinidadEsperada
+) {
+}
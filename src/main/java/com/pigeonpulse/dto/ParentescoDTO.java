@@ -0,0 +1,8 @@
+package com.pigeonpulse.dto;
+
+public record ParentescoDTO(
+    String palomaIdA,
+    String palomaIdB,
+    double coeficienteParentesco
+) {
+}
@@ -0,0 +1,11 @@
+package com.pigeonpulse.dto;
+
+import java.util.Map;
+
+public record PuntoSerieDTO(
+    String periodo,
+    long total,
+    Map<String, Long> porEstado,
+    Map<String, Long> porSexo
+) {
+}
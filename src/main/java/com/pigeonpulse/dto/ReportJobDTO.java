@@ -0,0 +1,13 @@
+package com.pigeonpulse.dto;
+
+import java.time.Instant;
+
+public record ReportJobDTO(
+    String id,
+    String estado,
+    String palomarId,
+    Instant creado,
+    Instant terminado,
+    String error
+) {
+}
@@ -0,0 +1,11 @@
+package com.pigeonpulse.dto;
+
+import java.util.List;
+
+public record SerieDTO(
+    String palomarId,
+    String serie,
+    String granularidad,
+    List<PuntoSerieDTO> puntos
+) {
+}
@@ -0,0 +1,8 @@
+package com.pigeonpulse.event;
+
+// Published after access of a usuario to a palomar is granted, changed or revoked
+public record MembershipChangedEvent(
+    String usuarioId,
+    String palomarId
+) {
+}
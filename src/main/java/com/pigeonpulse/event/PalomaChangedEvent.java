@@ -0,0 +1,12 @@
+package com.pigeonpulse.event;
+
+import com.pigeonpulse.model.Paloma;
+
+// Published after a paloma is created, updated or deleted. before is null on creation and
+// after is null on deletion; a move between palomares carries both palomarIds
+public record PalomaChangedEvent(
+    String palomaId,
+    Paloma before,
+    Paloma after
+) {
+}
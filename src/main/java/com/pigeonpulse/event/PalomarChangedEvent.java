@@ -0,0 +1,7 @@
+package com.pigeonpulse.event;
+
+// Published after a palomar document is updated or deleted
+public record PalomarChangedEvent(
+    String palomarId
+) {
+}
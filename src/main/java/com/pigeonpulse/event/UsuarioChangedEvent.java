@@ -0,0 +1,7 @@
+package com.pigeonpulse.event;
+
+// Published after a usuario document is updated or deleted
+public record UsuarioChangedEvent(
+    String usuarioId
+) {
+}
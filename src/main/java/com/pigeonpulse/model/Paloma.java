@@ -92,20 +92,29 @@ public class Paloma {
     public String getTipoOjo() { return tipoOjo; }
     public void setTipoOjo(String tipoOjo) { this.tipoOjo = tipoOjo; }
 
+    // Null when the paloma was stored without a registration date
     @Exclude
     public LocalDateTime getFechaRegistro() {
         if (fechaRegistro != null) {
             return LocalDateTime.ofInstant(fechaRegistro.toDate().toInstant(),
                 java.time.ZoneId.systemDefault());
         }
-        return LocalDateTime.now();
+        return null;
     }
 
+    @Exclude
     public void setFechaRegistro(LocalDateTime fechaRegistro) {
         this.fechaRegistro = fechaRegistro != null ?
             Timestamp.of(java.util.Date.from(fechaRegistro.atZone(java.time.ZoneId.systemDefault()).toInstant())) : null;
     }
 
+    // Stored form of fechaRegistro, so it can be used for ordering and range queries
+    @PropertyName("fechaRegistro")
+    public Timestamp getFechaRegistroTimestamp() { return fechaRegistro; }
+
+    @PropertyName("fechaRegistro")
+    public void setFechaRegistroTimestamp(Timestamp fechaRegistro) { this.fechaRegistro = fechaRegistro; }
+
     public String getPeso() { return peso; }
     public void setPeso(String peso) { this.peso = peso; }
 
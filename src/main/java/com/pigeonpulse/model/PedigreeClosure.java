@@ -0,0 +1,72 @@
+package com.pigeonpulse.model;
+
+import com.google.cloud.firestore.annotation.DocumentId;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Materialized ancestors of one paloma (document id = paloma id). ancestros, profundidades and
+// ancestroIds are parallel lists in generation order; ancestroIds is null for rings that have
+// no paloma in the palomar
+public class PedigreeClosure {
+
+    @DocumentId
+    private String id;
+
+    private String palomarId;
+
+    private String anillo;
+
+    private List<String> ancestros = new ArrayList<>();
+
+    private List<Integer> profundidades = new ArrayList<>();
+
+    private List<String> ancestroIds = new ArrayList<>();
+
+    // True when ancestors deeper than the configured max depth were left out
+    private boolean truncado;
+
+    // Constructors
+    public PedigreeClosure() {
+    }
+
+    public PedigreeClosure(String id, String palomarId, String anillo) {
+        this.id = id;
+        this.palomarId = palomarId;
+        this.anillo = anillo;
+    }
+
+    // Getters and Setters
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getPalomarId() { return palomarId; }
+    public void setPalomarId(String palomarId) { this.palomarId = palomarId; }
+
+    public String getAnillo() { return anillo; }
+    public void setAnillo(String anillo) { this.anillo = anillo; }
+
+    public List<String> getAncestros() { return ancestros; }
+    public void setAncestros(List<String> ancestros) { this.ancestros = ancestros; }
+
+    public List<Integer> getProfundidades() { return profundidades; }
+    public void setProfundidades(List<Integer> profundidades) { this.profundidades = profundidades; }
+
+    public List<String> getAncestroIds() { return ancestroIds; }
+    public void setAncestroIds(List<String> ancestroIds) { this.ancestroIds = ancestroIds; }
+
+    public boolean isTruncado() { return truncado; }
+    public void setTruncado(boolean truncado) { this.truncado = truncado; }
+
+    // Helper methods
+    public void addAncestro(String anillo, int profundidad, String palomaId) {
+        ancestros.add(anillo);
+        profundidades.add(profundidad);
+        ancestroIds.add(palomaId);
+    }
+
+    public int profundidadDe(String anillo) {
+        int index = ancestros.indexOf(anillo);
+        return index < 0 ? -1 : profundidades.get(index);
+    }
+}
@@ -0,0 +1,52 @@
+package com.pigeonpulse.repository;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import java.time.Duration;
+import java.util.Optional;
+
+// Bounded W-TinyLFU cache with a fixed time-to-live per entry
+public class CaffeineEntityCache<T> implements EntityCache<T> {
+
+    private final Cache<String, T> cache;
+
+    public CaffeineEntityCache(long maximumSize, Duration ttl) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public Optional<T> get(String id) {
+        return Optional.ofNullable(cache.getIfPresent(id));
+    }
+
+    @Override
+    public void put(String id, T entity) {
+        if (id != null && entity != null) {
+            cache.put(id, entity);
+        }
+    }
+
+    @Override
+    public void invalidate(String id) {
+        if (id != null) {
+            cache.invalidate(id);
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public EntityCacheStats stats() {
+        CacheStats stats = cache.stats();
+        return new EntityCacheStats(stats.hitCount(), stats.missCount(), cache.estimatedSize());
+    }
+}
@@ -0,0 +1,98 @@
+package com.pigeonpulse.repository;
+
+import com.google.cloud.Timestamp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+// Opaque cursor holding the ordering values of the last document of a page. The cursor also
+// carries a signature of the ordering it was produced for, so a cursor reused with another sort
+// is rejected instead of being applied to the wrong fields
+final class CursorCodec {
+
+    private CursorCodec() {
+    }
+
+    static String encode(List<EntityQuery.Order> ordering, List<Object> values) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(signature(ordering));
+            out.writeShort(values.size());
+            for (Object value : values) {
+                if (value == null) {
+                    out.writeByte('n');
+                } else if (value instanceof String s) {
+                    out.writeByte('s');
+                    out.writeUTF(s);
+                } else if (value instanceof Long || value instanceof Integer) {
+                    out.writeByte('l');
+                    out.writeLong(((Number) value).longValue());
+                } else if (value instanceof Number n) {
+                    out.writeByte('d');
+                    out.writeDouble(n.doubleValue());
+                } else if (value instanceof Boolean b) {
+                    out.writeByte('b');
+                    out.writeBoolean(b);
+                } else if (value instanceof Timestamp t) {
+                    out.writeByte('t');
+                    out.writeLong(t.getSeconds());
+                    out.writeInt(t.getNanos());
+                } else {
+                    throw new IllegalArgumentException("Unsupported cursor value: " + value.getClass().getSimpleName());
+                }
+            }
+            out.flush();
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to encode cursor", e);
+        }
+    }
+
+    // Throws IllegalArgumentException for a malformed cursor or one made for another ordering
+    static List<Object> decode(String cursor, List<EntityQuery.Order> ordering) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(cursor)));
+            if (in.readInt() != signature(ordering)) {
+                throw new IllegalArgumentException("Cursor does not match the query ordering");
+            }
+            int size = in.readShort();
+            if (size != ordering.size()) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            List<Object> values = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                byte type = in.readByte();
+                switch (type) {
+                    case 'n' -> values.add(null);
+                    case 's' -> values.add(in.readUTF());
+                    case 'l' -> values.add(in.readLong());
+                    case 'd' -> values.add(in.readDouble());
+                    case 'b' -> values.add(in.readBoolean());
+                    case 't' -> values.add(Timestamp.ofTimeSecondsAndNanos(in.readLong(), in.readInt()));
+                    default -> throw new IllegalArgumentException("Invalid cursor");
+                }
+            }
+            if (in.available() > 0) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            return values;
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    private static int signature(List<EntityQuery.Order> ordering) {
+        StringBuilder signature = new StringBuilder();
+        for (EntityQuery.Order order : ordering) {
+            signature.append(order.field()).append(' ').append(order.direction()).append(',');
+        }
+        return signature.toString().hashCode();
+    }
+}
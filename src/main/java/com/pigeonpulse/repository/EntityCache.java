@@ -0,0 +1,43 @@
+package com.pigeonpulse.repository;
+
+import java.util.Optional;
+
+public interface EntityCache<T> {
+
+    Optional<T> get(String id);
+
+    void put(String id, T entity);
+
+    void invalidate(String id);
+
+    void invalidateAll();
+
+    EntityCacheStats stats();
+
+    // Cache used by collections that opt out of caching
+    static <T> EntityCache<T> disabled() {
+        return new EntityCache<>() {
+            @Override
+            public Optional<T> get(String id) {
+                return Optional.empty();
+            }
+
+            @Override
+            public void put(String id, T entity) {
+            }
+
+            @Override
+            public void invalidate(String id) {
+            }
+
+            @Override
+            public void invalidateAll() {
+            }
+
+            @Override
+            public EntityCacheStats stats() {
+                return new EntityCacheStats(0, 0, 0);
+            }
+        };
+    }
+}
@@ -0,0 +1,8 @@
+package com.pigeonpulse.repository;
+
+public record EntityCacheStats(
+    long hits,
+    long misses,
+    long size
+) {
+}
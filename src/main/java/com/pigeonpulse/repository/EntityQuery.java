@@ -0,0 +1,309 @@
+package com.pigeonpulse.repository;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+// Combines equality/range predicates, ordering and limit into a single Firestore query
+public class EntityQuery {
+
+    // Orders by document id, used as the final tie-breaker for keyset pagination
+    public static final String DOCUMENT_ID = "__name__";
+
+    public enum Operator {
+        EQUAL, IN, ARRAY_CONTAINS, GREATER_THAN, GREATER_THAN_OR_EQUAL, LESS_THAN, LESS_THAN_OR_EQUAL;
+
+        boolean isRange() {
+            return this == GREATER_THAN || this == GREATER_THAN_OR_EQUAL || this == LESS_THAN || this == LESS_THAN_OR_EQUAL;
+        }
+    }
+
+    public record Condition(String field, Operator operator, Object value) {}
+
+    public record Order(String field, Query.Direction direction) {}
+
+    private final List<Condition> conditions = new ArrayList<>();
+    private final List<Order> orders = new ArrayList<>();
+    private final List<String> selectFields = new ArrayList<>();
+    private Integer limit;
+    private List<Object> startAfter;
+
+    public static EntityQuery create() {
+        return new EntityQuery();
+    }
+
+    public EntityQuery copy() {
+        EntityQuery copy = new EntityQuery();
+        copy.conditions.addAll(conditions);
+        copy.orders.addAll(orders);
+        copy.selectFields.addAll(selectFields);
+        copy.limit = limit;
+        copy.startAfter = startAfter;
+        return copy;
+    }
+
+    // Null or empty values are ignored, so optional request filters can be passed straight through
+    public EntityQuery whereEqualTo(String field, Object value) {
+        return where(field, Operator.EQUAL, value);
+    }
+
+    public EntityQuery whereIn(String field, Collection<?> values) {
+        if (values != null && !values.isEmpty()) {
+            conditions.add(new Condition(field, Operator.IN, List.copyOf(values)));
+        }
+        return this;
+    }
+
+    public EntityQuery whereArrayContains(String field, Object value) {
+        return where(field, Operator.ARRAY_CONTAINS, value);
+    }
+
+    public EntityQuery whereGreaterThan(String field, Object value) {
+        return where(field, Operator.GREATER_THAN, value);
+    }
+
+    public EntityQuery whereGreaterThanOrEqualTo(String field, Object value) {
+        return where(field, Operator.GREATER_THAN_OR_EQUAL, value);
+    }
+
+    public EntityQuery whereLessThan(String field, Object value) {
+        return where(field, Operator.LESS_THAN, value);
+    }
+
+    public EntityQuery whereLessThanOrEqualTo(String field, Object value) {
+        return where(field, Operator.LESS_THAN_OR_EQUAL, value);
+    }
+
+    public EntityQuery orderBy(String field, Query.Direction direction) {
+        orders.add(new Order(field, direction));
+        return this;
+    }
+
+    // Projection: only these fields are read, the rest come back as null in the entity
+    public EntityQuery select(String... fields) {
+        selectFields.addAll(List.of(fields));
+        return this;
+    }
+
+    public EntityQuery limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    // Values of the (normalized) ordering fields of the last document already returned
+    public EntityQuery startAfter(List<Object> values) {
+        this.startAfter = values;
+        return this;
+    }
+
+    public boolean isOrderedBy(String field) {
+        return orders.stream().anyMatch(o -> o.field().equals(field));
+    }
+
+    public List<Condition> getConditions() {
+        return List.copyOf(conditions);
+    }
+
+    public List<Order> getOrders() {
+        return normalizedOrders();
+    }
+
+    public Integer getLimit() {
+        return limit;
+    }
+
+    private EntityQuery where(String field, Operator operator, Object value) {
+        if (value == null || (value instanceof String s && s.isEmpty())) {
+            return this;
+        }
+        if (operator.isRange()) {
+            String rangeField = rangeField();
+            if (rangeField != null && !rangeField.equals(field)) {
+                throw new IllegalArgumentException("Range filters on more than one field are not supported: " + rangeField + ", " + field);
+            }
+        }
+        conditions.add(new Condition(field, operator, value));
+        return this;
+    }
+
+    private String rangeField() {
+        return conditions.stream()
+                .filter(c -> c.operator().isRange())
+                .map(Condition::field)
+                .findFirst()
+                .orElse(null);
+    }
+
+    // Needs more than the single-field indexes Firestore maintains automatically
+    public boolean needsCompositeIndex() {
+        boolean hasEquality = conditions.stream().anyMatch(c -> !c.operator().isRange());
+        return hasEquality && (rangeField() != null || !orders.isEmpty());
+    }
+
+    // Firestore requires the first ordering to be on the range field, if there is one
+    private List<Order> normalizedOrders() {
+        String rangeField = rangeField();
+        if (rangeField == null || (!orders.isEmpty() && orders.get(0).field().equals(rangeField))) {
+            return List.copyOf(orders);
+        }
+        List<Order> normalized = new ArrayList<>();
+        normalized.add(new Order(rangeField, Query.Direction.ASCENDING));
+        orders.stream().filter(o -> !o.field().equals(rangeField)).forEach(normalized::add);
+        return normalized;
+    }
+
+    Query applyTo(Query query) {
+        query = applySelect(query);
+        for (Condition condition : conditions) {
+            query = applyCondition(query, condition);
+        }
+        for (Order order : normalizedOrders()) {
+            query = DOCUMENT_ID.equals(order.field())
+                    ? query.orderBy(FieldPath.documentId(), order.direction())
+                    : query.orderBy(order.field(), order.direction());
+        }
+        if (startAfter != null) {
+            query = query.startAfter(startAfter.toArray());
+        }
+        if (limit != null) {
+            query = query.limit(limit);
+        }
+        return query;
+    }
+
+    // Part of the query that never needs a composite index
+    Query applyEqualityTo(Query query) {
+        query = applySelect(query);
+        for (Condition condition : conditions) {
+            if (!condition.operator().isRange()) {
+                query = applyCondition(query, condition);
+            }
+        }
+        return query;
+    }
+
+    private Query applySelect(Query query) {
+        if (selectFields.isEmpty()) {
+            return query;
+        }
+        // Fields used by the query must be read too for the in-memory fallback to evaluate them
+        List<String> fields = new ArrayList<>(selectFields);
+        conditions.forEach(c -> addIfMissing(fields, c.field()));
+        orders.stream().map(Order::field).filter(f -> !DOCUMENT_ID.equals(f)).forEach(f -> addIfMissing(fields, f));
+        return query.select(fields.toArray(String[]::new));
+    }
+
+    private static void addIfMissing(List<String> fields, String field) {
+        if (!fields.contains(field)) {
+            fields.add(field);
+        }
+    }
+
+    // Evaluates range predicates, ordering and limit over documents fetched with applyEqualityTo
+    <D extends DocumentSnapshot> List<D> filterInMemory(List<D> documents) {
+        List<Order> ordering = normalizedOrders();
+        var stream = documents.stream().filter(this::matches);
+        if (startAfter != null) {
+            stream = stream.filter(doc -> compareToCursor(doc, ordering) > 0);
+        }
+        if (!ordering.isEmpty()) {
+            stream = stream.sorted(comparator(ordering));
+        }
+        if (limit != null) {
+            stream = stream.limit(limit);
+        }
+        return stream.toList();
+    }
+
+    boolean matches(DocumentSnapshot document) {
+        for (Condition condition : conditions) {
+            Object actual = document.get(condition.field());
+            boolean matches = switch (condition.operator()) {
+                case EQUAL -> valuesEqual(actual, condition.value());
+                case IN -> ((List<?>) condition.value()).stream().anyMatch(v -> valuesEqual(actual, v));
+                case ARRAY_CONTAINS -> actual instanceof List<?> list && list.stream().anyMatch(v -> valuesEqual(v, condition.value()));
+                case GREATER_THAN -> actual != null && compareValues(actual, condition.value()) > 0;
+                case GREATER_THAN_OR_EQUAL -> actual != null && compareValues(actual, condition.value()) >= 0;
+                case LESS_THAN -> actual != null && compareValues(actual, condition.value()) < 0;
+                case LESS_THAN_OR_EQUAL -> actual != null && compareValues(actual, condition.value()) <= 0;
+            };
+            if (!matches) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Position of the document relative to the cursor, following the query ordering
+    private int compareToCursor(DocumentSnapshot document, List<Order> ordering) {
+        for (int i = 0; i < ordering.size() && i < startAfter.size(); i++) {
+            Order order = ordering.get(i);
+            int cmp = compareValues(valueOf(document, order.field()), startAfter.get(i));
+            if (cmp != 0) {
+                return order.direction() == Query.Direction.DESCENDING ? -cmp : cmp;
+            }
+        }
+        return 0;
+    }
+
+    static Object valueOf(DocumentSnapshot document, String field) {
+        return DOCUMENT_ID.equals(field) ? document.getId() : document.get(field);
+    }
+
+    static Comparator<DocumentSnapshot> comparator(List<Order> ordering) {
+        Comparator<DocumentSnapshot> comparator = null;
+        for (Order order : ordering) {
+            Comparator<DocumentSnapshot> next = (a, b) -> compareValues(valueOf(a, order.field()), valueOf(b, order.field()));
+            if (order.direction() == Query.Direction.DESCENDING) {
+                next = next.reversed();
+            }
+            comparator = comparator == null ? next : comparator.thenComparing(next);
+        }
+        Comparator<DocumentSnapshot> byId = Comparator.comparing(DocumentSnapshot::getId);
+        return comparator == null ? byId : comparator.thenComparing(byId);
+    }
+
+    private static Query applyCondition(Query query, Condition condition) {
+        return switch (condition.operator()) {
+            case EQUAL -> query.whereEqualTo(condition.field(), condition.value());
+            case IN -> query.whereIn(condition.field(), (List<?>) condition.value());
+            case ARRAY_CONTAINS -> query.whereArrayContains(condition.field(), condition.value());
+            case GREATER_THAN -> query.whereGreaterThan(condition.field(), condition.value());
+            case GREATER_THAN_OR_EQUAL -> query.whereGreaterThanOrEqualTo(condition.field(), condition.value());
+            case LESS_THAN -> query.whereLessThan(condition.field(), condition.value());
+            case LESS_THAN_OR_EQUAL -> query.whereLessThanOrEqualTo(condition.field(), condition.value());
+        };
+    }
+
+    private static boolean valuesEqual(Object a, Object b) {
+        if (a instanceof Number && b instanceof Number) {
+            return compareValues(a, b) == 0;
+        }
+        return Objects.equals(a, b);
+    }
+
+    // Firestore returns integers as Long, so numbers are compared by value; nulls sort first
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static int compareValues(Object a, Object b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        if (a instanceof Number na && b instanceof Number nb) {
+            return Double.compare(na.doubleValue(), nb.doubleValue());
+        }
+        if (a instanceof Timestamp ta && b instanceof Timestamp tb) {
+            return ta.compareTo(tb);
+        }
+        if (a instanceof Comparable ca && a.getClass().isInstance(b)) {
+            return ca.compareTo(b);
+        }
+        return a.toString().compareTo(b.toString());
+    }
+}
@@ -1,12 +1,23 @@
 package com.pigeonpulse.repository;
 
 import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.StatusCode;
 import com.google.cloud.firestore.*;
+import com.google.common.util.concurrent.MoreExecutors;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.Map;
 import java.util.HashMap;
@@ -20,56 +31,249 @@ public abstract class FirebaseRepository<T> {
     protected abstract String getCollectionName();
     protected abstract Class<T> getEntityClass();
 
+    // Holds the immutable snapshots rather than entities: every hit maps a fresh entity, so a
+    // caller that mutates what it read never changes what other readers get
+    private EntityCache<DocumentSnapshot> entityCache = EntityCache.disabled();
+
+    // Collections override this to enable a read-through cache for findById
+    protected EntityCache<DocumentSnapshot> createEntityCache() {
+        return EntityCache.disabled();
+    }
+
+    @PostConstruct
+    void initEntityCache() {
+        this.entityCache = createEntityCache();
+    }
+
+    public EntityCacheStats getCacheStats() {
+        return entityCache.stats();
+    }
+
     public Optional<T> findById(String id) throws ExecutionException, InterruptedException {
-        DocumentReference docRef = firestore.collection(getCollectionName()).document(id);
-        ApiFuture<DocumentSnapshot> future = docRef.get();
-        DocumentSnapshot document = future.get();
-        if (document.exists()) {
-            T entity = document.toObject(getEntityClass());
-            return Optional.ofNullable(entity);
-        }
-        return Optional.empty();
+        return findByIdAsync(id).get();
+    }
+
+    public List<T> findAllByIds(Collection<String> ids) throws ExecutionException, InterruptedException {
+        return findAllByIdsAsync(ids).get();
     }
 
     public List<T> findAll() throws ExecutionException, InterruptedException {
-        ApiFuture<QuerySnapshot> future = firestore.collection(getCollectionName()).get();
-        List<QueryDocumentSnapshot> documents = future.get().getDocuments();
-        return documents.stream()
-                .map(doc -> doc.toObject(getEntityClass()))
-                .toList();
+        return findAllAsync().get();
     }
 
     public String save(T entity) throws ExecutionException, InterruptedException {
+        return saveAsync(entity).get();
+    }
+
+    public String saveWithId(String id, T entity) throws ExecutionException, InterruptedException {
+        return saveWithIdAsync(id, entity).get();
+    }
+
+    public void update(String id, T entity) throws ExecutionException, InterruptedException {
+        updateAsync(id, entity).get();
+    }
+
+    public void deleteById(String id) throws ExecutionException, InterruptedException {
+        deleteByIdAsync(id).get();
+    }
+
+    public List<T> findByField(String field, Object value) throws ExecutionException, InterruptedException {
+        return findByFieldAsync(field, value).get();
+    }
+
+    // Non-blocking variants: the Firestore call completes on the client's own executor,
+    // so the calling thread is never parked waiting for the round trip
+    public CompletableFuture<Optional<T>> findByIdAsync(String id) {
+        Optional<DocumentSnapshot> cached = entityCache.get(id);
+        if (cached.isPresent()) {
+            return CompletableFuture.completedFuture(Optional.ofNullable(toEntity(cached.get())));
+        }
+        DocumentReference docRef = firestore.collection(getCollectionName()).document(id);
+        return toCompletableFuture(docRef.get())
+                .thenApply(document -> {
+                    if (!document.exists()) {
+                        return Optional.<T>empty();
+                    }
+                    entityCache.put(id, document);
+                    return Optional.ofNullable(toEntity(document));
+                });
+    }
+
+    // Single getAll round trip for many documents; missing ids are skipped and
+    // results keep the order of the requested ids
+    public CompletableFuture<List<T>> findAllByIdsAsync(Collection<String> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        Map<String, T> found = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String id : new LinkedHashSet<>(ids)) {
+            if (id == null || id.isEmpty()) {
+                continue;
+            }
+            found.put(id, null);
+            entityCache.get(id).ifPresentOrElse(document -> found.put(id, toEntity(document)), () -> missing.add(id));
+        }
+        if (missing.isEmpty()) {
+            return CompletableFuture.completedFuture(found.values().stream().filter(e -> e != null).toList());
+        }
+
+        CollectionReference collection = firestore.collection(getCollectionName());
+        DocumentReference[] refs = missing.stream()
+                .map(collection::document)
+                .toArray(DocumentReference[]::new);
+        return toCompletableFuture(firestore.getAll(refs))
+                .thenApply(documents -> {
+                    for (DocumentSnapshot document : documents) {
+                        if (document.exists()) {
+                            entityCache.put(document.getId(), document);
+                            found.put(document.getId(), toEntity(document));
+                        }
+                    }
+                    return found.values().stream().filter(e -> e != null).toList();
+                });
+    }
+
+    public CompletableFuture<List<T>> findAllAsync() {
+        return toCompletableFuture(firestore.collection(getCollectionName()).get())
+                .thenApply(this::toEntities);
+    }
+
+    public CompletableFuture<String> saveAsync(T entity) {
         System.out.println("FirebaseRepository: Saving entity to collection: " + getCollectionName());
         System.out.println("FirebaseRepository: Entity: " + entity.toString());
         CollectionReference collection = firestore.collection(getCollectionName());
-        ApiFuture<DocumentReference> future = collection.add(entity);
-        DocumentReference document = future.get();
-        String id = document.getId();
-        System.out.println("FirebaseRepository: Saved with ID: " + id);
-        return id;
+        return toCompletableFuture(collection.add(entity))
+                .thenApply(document -> {
+                    String id = document.getId();
+                    entityCache.invalidate(id);
+                    System.out.println("FirebaseRepository: Saved with ID: " + id);
+                    return id;
+                });
     }
 
-    public void update(String id, T entity) throws ExecutionException, InterruptedException {
+    // Writes the entity under a caller-chosen document id instead of an auto-generated one
+    public CompletableFuture<String> saveWithIdAsync(String id, T entity) {
+        return updateAsync(id, entity).thenApply(result -> id);
+    }
+
+    public CompletableFuture<Void> updateAsync(String id, T entity) {
         DocumentReference docRef = firestore.collection(getCollectionName()).document(id);
-        ApiFuture<WriteResult> future = docRef.set(entity);
-        future.get();
+        entityCache.invalidate(id);
+        return toCompletableFuture(docRef.set(entity)).whenComplete((result, error) -> entityCache.invalidate(id))
+                .thenApply(result -> null);
     }
 
-    public void deleteById(String id) throws ExecutionException, InterruptedException {
+    // Max writes Firestore accepts in one batch
+    protected static final int WRITE_BATCH_LIMIT = 500;
+
+    // Writes many documents under their ids in batches that commit concurrently
+    public CompletableFuture<Void> saveAllWithIdsAsync(Map<String, T> entities) {
+        CollectionReference collection = firestore.collection(getCollectionName());
+        List<Map.Entry<String, T>> entries = new ArrayList<>(entities.entrySet());
+        List<CompletableFuture<List<WriteResult>>> commits = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i += WRITE_BATCH_LIMIT) {
+            WriteBatch batch = firestore.batch();
+            for (Map.Entry<String, T> entry : entries.subList(i, Math.min(i + WRITE_BATCH_LIMIT, entries.size()))) {
+                entityCache.invalidate(entry.getKey());
+                batch.set(collection.document(entry.getKey()), entry.getValue());
+            }
+            commits.add(toCompletableFuture(batch.commit()));
+        }
+        return CompletableFuture.allOf(commits.toArray(CompletableFuture[]::new))
+                .whenComplete((result, error) -> entities.keySet().forEach(entityCache::invalidate));
+    }
+
+    public CompletableFuture<Void> deleteAllByIdsAsync(Collection<String> ids) {
+        CollectionReference collection = firestore.collection(getCollectionName());
+        List<String> idList = new ArrayList<>(ids);
+        List<CompletableFuture<List<WriteResult>>> commits = new ArrayList<>();
+        for (int i = 0; i < idList.size(); i += WRITE_BATCH_LIMIT) {
+            WriteBatch batch = firestore.batch();
+            for (String id : idList.subList(i, Math.min(i + WRITE_BATCH_LIMIT, idList.size()))) {
+                entityCache.invalidate(id);
+                batch.delete(collection.document(id));
+            }
+            commits.add(toCompletableFuture(batch.commit()));
+        }
+        return CompletableFuture.allOf(commits.toArray(CompletableFuture[]::new))
+                .whenComplete((result, error) -> idList.forEach(entityCache::invalidate));
+    }
+
+    public CompletableFuture<Void> deleteByIdAsync(String id) {
         DocumentReference docRef = firestore.collection(getCollectionName()).document(id);
-        ApiFuture<WriteResult> future = docRef.delete();
-        future.get();
+        entityCache.invalidate(id);
+        return toCompletableFuture(docRef.delete()).whenComplete((result, error) -> entityCache.invalidate(id))
+                .thenApply(result -> null);
     }
 
-    public List<T> findByField(String field, Object value) throws ExecutionException, InterruptedException {
+    public CompletableFuture<List<T>> findByFieldAsync(String field, Object value) {
         ApiFuture<QuerySnapshot> future = firestore.collection(getCollectionName())
                 .whereEqualTo(field, value)
                 .get();
-        List<QueryDocumentSnapshot> documents = future.get().getDocuments();
-        return documents.stream()
-                .map(doc -> doc.toObject(getEntityClass()))
-                .toList();
+        return toCompletableFuture(future).thenApply(this::toEntities);
+    }
+
+    public List<T> find(EntityQuery query) throws ExecutionException, InterruptedException {
+        return findAsync(query).get();
+    }
+
+    public CompletableFuture<List<T>> findAsync(EntityQuery query) {
+        return findSnapshotsAsync(query)
+                .thenApply(documents -> documents.stream()
+                        .map(this::toEntity)
+                        .toList());
+    }
+
+    public Page<T> findPage(EntityQuery query, String cursor, int pageSize) throws ExecutionException, InterruptedException {
+        return findPageAsync(query, cursor, pageSize).get();
+    }
+
+    // Keyset pagination: the cursor carries the ordering values of the previous page's last
+    // document, so each page costs pageSize + 1 reads however deep it is
+    public CompletableFuture<Page<T>> findPageAsync(EntityQuery query, String cursor, int pageSize) {
+        EntityQuery paged = query.copy();
+        if (!paged.isOrderedBy(EntityQuery.DOCUMENT_ID)) {
+            paged.orderBy(EntityQuery.DOCUMENT_ID, Query.Direction.ASCENDING);
+        }
+        List<EntityQuery.Order> ordering = paged.getOrders();
+        if (cursor != null && !cursor.isEmpty()) {
+            paged.startAfter(CursorCodec.decode(cursor, ordering));
+        }
+        paged.limit(pageSize + 1);
+
+        return findSnapshotsAsync(paged).thenApply(documents -> {
+            boolean hasNext = documents.size() > pageSize;
+            List<QueryDocumentSnapshot> pageDocuments = hasNext ? documents.subList(0, pageSize) : documents;
+            String nextCursor = null;
+            if (hasNext) {
+                DocumentSnapshot last = pageDocuments.get(pageDocuments.size() - 1);
+                nextCursor = CursorCodec.encode(ordering, ordering.stream()
+                        .map(order -> EntityQuery.valueOf(last, order.field()))
+                        .toList());
+            }
+            List<T> items = pageDocuments.stream()
+                    .map(this::toEntity)
+                    .toList();
+            return new Page<>(items, nextCursor);
+        });
+    }
+
+    // Runs the whole query in Firestore. If the composite index it needs does not exist yet,
+    // only the equality part runs server side and the rest is evaluated in memory
+    protected CompletableFuture<List<QueryDocumentSnapshot>> findSnapshotsAsync(EntityQuery query) {
+        CollectionReference collection = firestore.collection(getCollectionName());
+        return toCompletableFuture(query.applyTo(collection).get())
+                .thenApply(QuerySnapshot::getDocuments)
+                .exceptionallyCompose(error -> {
+                    if (!query.needsCompositeIndex() || !isMissingIndex(error)) {
+                        return CompletableFuture.failedFuture(error);
+                    }
+                    System.out.println("FirebaseRepository: Missing composite index on " + getCollectionName()
+                            + ", filtering in memory. " + rootMessage(error));
+                    return toCompletableFuture(query.applyEqualityTo(collection).get())
+                            .thenApply(snapshot -> query.filterInMemory(snapshot.getDocuments()));
+                });
     }
 
     public void removeFieldFromDocument(String id, String fieldName) throws ExecutionException, InterruptedException {
@@ -78,6 +282,7 @@ public abstract class FirebaseRepository<T> {
         updates.put(fieldName, FieldValue.delete());
         ApiFuture<WriteResult> future = docRef.update(updates);
         future.get();
+        entityCache.invalidate(id);
     }
 
     public void removeFieldFromAllDocuments(String fieldName) throws ExecutionException, InterruptedException {
@@ -92,5 +297,54 @@ public abstract class FirebaseRepository<T> {
                 updateFuture.get();
             }
         }
+        entityCache.invalidateAll();
+    }
+
+    // Every read goes through here; repositories override it to fix up what toObject cannot express
+    protected T toEntity(DocumentSnapshot document) {
+        return document.toObject(getEntityClass());
+    }
+
+    protected List<T> toEntities(QuerySnapshot snapshot) {
+        return snapshot.getDocuments().stream()
+                .map(this::toEntity)
+                .toList();
+    }
+
+    private static boolean isMissingIndex(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof ApiException apiException
+                    && apiException.getStatusCode().getCode() == StatusCode.Code.FAILED_PRECONDITION) {
+                return true;
+            }
+            if (t.getMessage() != null && t.getMessage().contains("FAILED_PRECONDITION")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String rootMessage(Throwable error) {
+        Throwable root = error;
+        while (root.getCause() != null) {
+            root = root.getCause();
+        }
+        return root.getMessage();
+    }
+
+    protected static <V> CompletableFuture<V> toCompletableFuture(ApiFuture<V> apiFuture) {
+        CompletableFuture<V> result = new CompletableFuture<>();
+        ApiFutures.addCallback(apiFuture, new ApiFutureCallback<V>() {
+            @Override
+            public void onSuccess(V value) {
+                result.complete(value);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                result.completeExceptionally(t);
+            }
+        }, MoreExecutors.directExecutor());
+        return result;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,10 @@
+package com.pigeonpulse.repository;
+
+import java.util.List;
+
+// One page of a keyset-paginated query; nextCursor is null on the last page
+public record Page<T>(
+    List<T> items,
+    String nextCursor
+) {
+}
@@ -1,15 +1,22 @@
 package com.pigeonpulse.repository;
 
+import com.google.cloud.firestore.DocumentSnapshot;
 import com.pigeonpulse.model.Paloma;
 import org.springframework.stereotype.Repository;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
 @Repository
 public class PalomaRepository extends FirebaseRepository<Paloma> {
 
+    // Max number of values Firestore accepts in a single whereIn
+    public static final int IN_QUERY_LIMIT = 30;
+
     @Override
     protected String getCollectionName() {
         return "palomas_v2";
@@ -20,6 +27,17 @@ public class PalomaRepository extends FirebaseRepository<Paloma> {
         return Paloma.class;
     }
 
+    // The Paloma constructor stamps fechaRegistro with the current time; documents stored without
+    // one (legacy or projected reads) must not look registered right now
+    @Override
+    protected Paloma toEntity(DocumentSnapshot document) {
+        Paloma paloma = super.toEntity(document);
+        if (paloma != null && !document.contains("fechaRegistro")) {
+            paloma.setFechaRegistroTimestamp(null);
+        }
+        return paloma;
+    }
+
     public Optional<Paloma> findByAnillo(String anillo) throws ExecutionException, InterruptedException {
         return findByField("anillo", anillo).stream().findFirst();
     }
@@ -47,4 +65,43 @@ public class PalomaRepository extends FirebaseRepository<Paloma> {
     public List<Paloma> findByMadre(String madreAnillo) throws ExecutionException, InterruptedException {
         return findByField("madre", madreAnillo);
     }
-}
\ No newline at end of file
+
+    public CompletableFuture<Optional<Paloma>> findByAnilloAsync(String anillo) {
+        return findByFieldAsync("anillo", anillo).thenApply(palomas -> palomas.stream().findFirst());
+    }
+
+    public CompletableFuture<List<Paloma>> findByPalomarIdAsync(String palomarId) {
+        return findByFieldAsync("palomarId", palomarId);
+    }
+
+    // whereIn split into chunks of IN_QUERY_LIMIT that run concurrently
+    public CompletableFuture<List<Paloma>> findByFieldInAsync(String field, Collection<String> values) {
+        return findByFieldInAsync(field, values, null);
+    }
+
+    // Same, restricted to one palomar when palomarId is not null
+    public CompletableFuture<List<Paloma>> findByFieldInAsync(String field, Collection<String> values, String palomarId) {
+        List<String> distinct = values.stream().distinct().toList();
+        List<CompletableFuture<List<Paloma>>> chunks = new ArrayList<>();
+        for (int i = 0; i < distinct.size(); i += IN_QUERY_LIMIT) {
+            List<String> chunk = distinct.subList(i, Math.min(i + IN_QUERY_LIMIT, distinct.size()));
+            chunks.add(findAsync(EntityQuery.create().whereEqualTo("palomarId", palomarId).whereIn(field, chunk)));
+        }
+        return CompletableFuture.allOf(chunks.toArray(CompletableFuture[]::new))
+                .thenApply(done -> chunks.stream()
+                        .flatMap(chunk -> chunk.join().stream())
+                        .toList());
+    }
+
+    public CompletableFuture<List<Paloma>> findByAnillosAsync(Collection<String> anillos) {
+        return findByFieldInAsync("anillo", anillos);
+    }
+
+    public CompletableFuture<List<Paloma>> findByPadreAsync(String padreAnillo) {
+        return findByFieldAsync("padre", padreAnillo);
+    }
+
+    public CompletableFuture<List<Paloma>> findByMadreAsync(String madreAnillo) {
+        return findByFieldAsync("madre", madreAnillo);
+    }
+}
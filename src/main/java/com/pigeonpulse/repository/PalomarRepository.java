@@ -1,15 +1,25 @@
 package com.pigeonpulse.repository;
 
+import com.google.cloud.firestore.DocumentSnapshot;
 import com.pigeonpulse.model.Palomar;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
 @Repository
 public class PalomarRepository extends FirebaseRepository<Palomar> {
 
+    @Value("${cache.palomares.max-size:10000}")
+    private long cacheMaxSize;
+
+    @Value("${cache.palomares.ttl:10m}")
+    private Duration cacheTtl;
+
     @Override
     protected String getCollectionName() {
         return "palomares";
@@ -20,6 +30,11 @@ public class PalomarRepository extends FirebaseRepository<Palomar> {
         return Palomar.class;
     }
 
+    @Override
+    protected EntityCache<DocumentSnapshot> createEntityCache() {
+        return new CaffeineEntityCache<>(cacheMaxSize, cacheTtl);
+    }
+
     public Optional<Palomar> findByPropietarioId(String propietarioId) throws ExecutionException, InterruptedException {
         return findByField("propietario_id", propietarioId).stream().findFirst();
     }
@@ -31,4 +46,8 @@ public class PalomarRepository extends FirebaseRepository<Palomar> {
     public List<Palomar> findByNombre(String nombre) throws ExecutionException, InterruptedException {
         return findByField("nombre", nombre);
     }
-}
\ No newline at end of file
+
+    public CompletableFuture<List<Palomar>> findByPropietarioIdListAsync(String propietarioId) {
+        return findByFieldAsync("propietario_id", propietarioId);
+    }
+}
@@ -0,0 +1,121 @@
+package com.pigeonpulse.repository;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldValue;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.SetOptions;
+import com.google.cloud.firestore.WriteBatch;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+// Bucketed time-series counters of a palomar. Each document holds a set of buckets as nested
+// maps of counters and carries palomarId so a rebuild can find and replace them all
+@Repository
+public class PalomarSeriesRepository {
+
+    private static final String COLLECTION = "palomar_series";
+
+    @Autowired
+    private Firestore firestore;
+
+    // One batched read; missing documents come back with exists() == false
+    public List<DocumentSnapshot> findAll(List<String> documentIds) throws ExecutionException, InterruptedException {
+        if (documentIds.isEmpty()) {
+            return List.of();
+        }
+        CollectionReference collection = firestore.collection(COLLECTION);
+        DocumentReference[] refs = documentIds.stream().map(collection::document).toArray(DocumentReference[]::new);
+        return firestore.getAll(refs).get();
+    }
+
+    // deltas maps document id -> counter path -> delta. All documents are updated in one
+    // atomic batch with FieldValue.increment, so concurrent writers never overwrite each other
+    public void increment(String palomarId, Map<String, Map<List<String>, Long>> deltas) throws ExecutionException, InterruptedException {
+        WriteBatch batch = firestore.batch();
+        int writes = 0;
+        for (Map.Entry<String, Map<List<String>, Long>> document : deltas.entrySet()) {
+            Map<String, Object> update = new HashMap<>();
+            document.getValue().forEach((path, delta) -> put(update, path, FieldValue.increment(delta)));
+            if (update.isEmpty()) {
+                continue;
+            }
+            update.put("palomarId", palomarId);
+            update.put("actualizado", Timestamp.now());
+            batch.set(firestore.collection(COLLECTION).document(document.getKey()), update, SetOptions.merge());
+            writes++;
+        }
+        if (writes > 0) {
+            batch.commit().get();
+        }
+    }
+
+    // Clears inicializado so the next read rebuilds the series; the version bump also makes a
+    // rebuild already running discard its result
+    public void markStale(String palomarId, String versionDocumentId) throws ExecutionException, InterruptedException {
+        firestore.collection(COLLECTION).document(versionDocumentId).set(Map.of(
+                "palomarId", palomarId,
+                "inicializado", false,
+                "version", FieldValue.increment(1),
+                "actualizado", Timestamp.now()), SetOptions.merge()).get();
+    }
+
+    public long getVersion(String versionDocumentId) throws ExecutionException, InterruptedException {
+        return version(firestore.collection(COLLECTION).document(versionDocumentId).get().get());
+    }
+
+    // Replaces every series document of the palomar with freshly computed counters; documents
+    // written here are marked inicializado, increments alone never set it. Runs in one
+    // transaction that only writes if the version field of versionDocumentId, bumped by every
+    // increment, still equals expectedVersion
+    public boolean replaceAllIfUnchanged(String palomarId, String versionDocumentId, long expectedVersion,
+                                         Map<String, Map<List<String>, Long>> counters) throws ExecutionException, InterruptedException {
+        CollectionReference collection = firestore.collection(COLLECTION);
+        DocumentReference versionDocument = collection.document(versionDocumentId);
+        return firestore.runTransaction(transaction -> {
+            if (version(transaction.get(versionDocument).get()) != expectedVersion) {
+                return false;
+            }
+            for (QueryDocumentSnapshot document : transaction.get(collection.whereEqualTo("palomarId", palomarId).select("palomarId")).get().getDocuments()) {
+                if (!counters.containsKey(document.getId())) {
+                    transaction.delete(document.getReference());
+                }
+            }
+            for (Map.Entry<String, Map<List<String>, Long>> document : counters.entrySet()) {
+                Map<String, Object> data = new HashMap<>();
+                document.getValue().forEach((path, count) -> put(data, path, count));
+                data.put("palomarId", palomarId);
+                data.put("inicializado", true);
+                data.put("actualizado", Timestamp.now());
+                if (document.getKey().equals(versionDocumentId)) {
+                    data.put("version", expectedVersion);
+                }
+                transaction.set(collection.document(document.getKey()), data);
+            }
+            return true;
+        }).get();
+    }
+
+    private static long version(DocumentSnapshot document) {
+        Long version = document.exists() ? document.getLong("version") : null;
+        return version != null ? version : 0L;
+    }
+
+    // Builds nested maps rather than dotted field paths, so values containing dots stay intact
+    @SuppressWarnings("unchecked")
+    private static void put(Map<String, Object> root, List<String> path, Object value) {
+        Map<String, Object> current = root;
+        for (int i = 0; i < path.size() - 1; i++) {
+            current = (Map<String, Object>) current.computeIfAbsent(path.get(i), k -> new HashMap<String, Object>());
+        }
+        current.put(path.get(path.size() - 1), value);
+    }
+}
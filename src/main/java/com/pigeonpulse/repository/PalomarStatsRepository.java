@@ -0,0 +1,93 @@
+package com.pigeonpulse.repository;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldValue;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.SetOptions;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+
+// Counters per palomar: total plus one map per dimension (porEstado, porSexo, porLinea, porAño).
+// version counts the increments applied, so a reconcile can tell whether it raced with one
+@Repository
+public class PalomarStatsRepository {
+
+    private static final String COLLECTION = "palomar_estadisticas";
+
+    @Autowired
+    private Firestore firestore;
+
+    public Optional<DocumentSnapshot> find(String palomarId) throws ExecutionException, InterruptedException {
+        DocumentSnapshot document = document(palomarId).get().get();
+        return document.exists() ? Optional.of(document) : Optional.empty();
+    }
+
+    // Applies deltas with FieldValue.increment, so concurrent writers never overwrite each other.
+    // deltas maps dimension -> value -> delta; "total" goes in the top-level delta
+    public void increment(String palomarId, long totalDelta, Map<String, Map<String, Long>> deltas) throws ExecutionException, InterruptedException {
+        Map<String, Object> update = new HashMap<>();
+        if (totalDelta != 0) {
+            update.put("total", FieldValue.increment(totalDelta));
+        }
+        deltas.forEach((dimension, values) -> {
+            Map<String, Object> increments = new HashMap<>();
+            values.forEach((value, delta) -> increments.put(value, FieldValue.increment(delta)));
+            if (!increments.isEmpty()) {
+                update.put(dimension, increments);
+            }
+        });
+        if (update.isEmpty()) {
+            return;
+        }
+        update.put("version", FieldValue.increment(1));
+        update.put("actualizado", Timestamp.now());
+        document(palomarId).set(update, SetOptions.merge()).get();
+    }
+
+    // The next read reconciles the counters from scratch; the version bump also makes a reconcile
+    // already running discard its result
+    public void markStale(String palomarId) throws ExecutionException, InterruptedException {
+        document(palomarId).set(Map.of(
+                "inicializado", false,
+                "version", FieldValue.increment(1),
+                "actualizado", Timestamp.now()), SetOptions.merge()).get();
+    }
+
+    public long getVersion(String palomarId) throws ExecutionException, InterruptedException {
+        return version(document(palomarId).get().get());
+    }
+
+    // Replaces the whole document with freshly computed counters, in a transaction that only
+    // writes if no increment was applied since expectedVersion was read
+    public boolean replaceIfUnchanged(String palomarId, long expectedVersion, long total, Map<String, Map<String, Long>> counters) throws ExecutionException, InterruptedException {
+        DocumentReference reference = document(palomarId);
+        return firestore.runTransaction(transaction -> {
+            if (version(transaction.get(reference).get()) != expectedVersion) {
+                return false;
+            }
+            Map<String, Object> data = new HashMap<>(counters);
+            data.put("total", total);
+            data.put("version", expectedVersion);
+            data.put("inicializado", true);
+            data.put("actualizado", Timestamp.now());
+            transaction.set(reference, data);
+            return true;
+        }).get();
+    }
+
+    private static long version(DocumentSnapshot document) {
+        Long version = document.exists() ? document.getLong("version") : null;
+        return version != null ? version : 0L;
+    }
+
+    private DocumentReference document(String palomarId) {
+        return firestore.collection(COLLECTION).document(palomarId);
+    }
+}
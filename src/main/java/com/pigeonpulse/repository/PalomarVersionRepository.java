@@ -0,0 +1,34 @@
+package com.pigeonpulse.repository;
+
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.FieldValue;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.SetOptions;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+// Data version per palomar: a counter bumped on every paloma write, used to key derived data
+@Repository
+public class PalomarVersionRepository {
+
+    private static final String COLLECTION = "palomar_versiones";
+
+    @Autowired
+    private Firestore firestore;
+
+    public long getVersion(String palomarId) throws ExecutionException, InterruptedException {
+        Long version = document(palomarId).get().get().getLong("version");
+        return version != null ? version : 0L;
+    }
+
+    public void increment(String palomarId) throws ExecutionException, InterruptedException {
+        document(palomarId).set(Map.of("version", FieldValue.increment(1)), SetOptions.merge()).get();
+    }
+
+    private DocumentReference document(String palomarId) {
+        return firestore.collection(COLLECTION).document(palomarId);
+    }
+}
@@ -0,0 +1,54 @@
+package com.pigeonpulse.repository;
+
+import com.google.cloud.Timestamp;
+import com.pigeonpulse.model.PedigreeClosure;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+@Repository
+public class PedigreeClosureRepository extends FirebaseRepository<PedigreeClosure> {
+
+    // One document per palomar whose closure has been fully built
+    private static final String BUILT_COLLECTION = "pedigree_closure_palomares";
+
+    @Override
+    protected String getCollectionName() {
+        return "pedigree_closure";
+    }
+
+    @Override
+    protected Class<PedigreeClosure> getEntityClass() {
+        return PedigreeClosure.class;
+    }
+
+    public List<PedigreeClosure> findByPalomarId(String palomarId) throws ExecutionException, InterruptedException {
+        return findByField("palomarId", palomarId);
+    }
+
+    // Every bird of the palomar that has the ring among its ancestors, in a single query
+    public CompletableFuture<List<PedigreeClosure>> findDescendantsAsync(String palomarId, String anillo) {
+        return findAsync(EntityQuery.create()
+                .whereEqualTo("palomarId", palomarId)
+                .whereArrayContains("ancestros", anillo));
+    }
+
+    public CompletableFuture<Boolean> isBuiltAsync(String palomarId) {
+        return toCompletableFuture(firestore.collection(BUILT_COLLECTION).document(palomarId).get())
+                .thenApply(document -> document.exists());
+    }
+
+    public void markBuilt(String palomarId) throws ExecutionException, InterruptedException {
+        firestore.collection(BUILT_COLLECTION).document(palomarId)
+                .set(Map.of("palomarId", palomarId, "actualizado", Timestamp.now()))
+                .get();
+    }
+
+    // Sends descendant lookups back to the graph walk until the next rebuild
+    public void clearBuilt(String palomarId) throws ExecutionException, InterruptedException {
+        firestore.collection(BUILT_COLLECTION).document(palomarId).delete().get();
+    }
+}
@@ -1,15 +1,32 @@
 package com.pigeonpulse.repository;
 
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.StatusCode;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.WriteBatch;
 import com.pigeonpulse.model.UsuarioPalomar;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
 @Repository
 public class UsuarioPalomarRepository extends FirebaseRepository<UsuarioPalomar> {
 
+    // Max relations per batch: each migrated relation is one set plus one delete
+    private static final int MIGRATION_BATCH_SIZE = 200;
+
+    // While legacy documents with auto-generated ids may still exist, a missed point read
+    // falls back to the old per-user query and migrates the relation it finds. Turned off in
+    // configuration on every instance once the migration has run
+    @Value("${membership.legacy-fallback:true}")
+    private boolean legacyFallback;
+
     @Override
     protected String getCollectionName() {
         return "usuario_palomares";
@@ -20,6 +37,10 @@ public class UsuarioPalomarRepository extends FirebaseRepository<UsuarioPalomar>
         return UsuarioPalomar.class;
     }
 
+    public static String membershipId(String usuarioId, String palomarId) {
+        return usuarioId + "_" + palomarId;
+    }
+
     public List<UsuarioPalomar> findByUsuarioId(String usuarioId) throws ExecutionException, InterruptedException {
         return findByField("usuario_id", usuarioId);
     }
@@ -29,20 +50,7 @@ public class UsuarioPalomarRepository extends FirebaseRepository<UsuarioPalomar>
     }
 
     public Optional<UsuarioPalomar> findByUsuarioIdAndPalomarId(String usuarioId, String palomarId) throws ExecutionException, InterruptedException {
-        System.out.println("UsuarioPalomarRepository: Finding relation for user: " + usuarioId + ", palomar: " + palomarId);
-        List<UsuarioPalomar> userRelations = findByUsuarioId(usuarioId);
-        System.out.println("UsuarioPalomarRepository: Found " + userRelations.size() + " relations for user");
-
-        for (UsuarioPalomar relation : userRelations) {
-            System.out.println("UsuarioPalomarRepository: Relation - usuarioId: " + relation.getUsuarioId() +
-                             ", palomarId: " + relation.getPalomarId() + ", rol: " + relation.getRol());
-        }
-
-        List<UsuarioPalomar> results = userRelations.stream()
-                .filter(up -> palomarId.equals(up.getPalomarId()))
-                .toList();
-        System.out.println("UsuarioPalomarRepository: Filtered results: " + results.size());
-        return results.stream().findFirst();
+        return findByUsuarioIdAndPalomarIdAsync(usuarioId, palomarId).get();
     }
 
     public List<UsuarioPalomar> findByUsuarioIdAndRol(String usuarioId, String rol) throws ExecutionException, InterruptedException {
@@ -50,4 +58,100 @@ public class UsuarioPalomarRepository extends FirebaseRepository<UsuarioPalomar>
                 .filter(up -> rol.equals(up.getRol()))
                 .toList();
     }
-}
\ No newline at end of file
+
+    // Stores the relation under its deterministic membership id. create() fails atomically when
+    // the document exists, so an existing relation (and its rol) is never overwritten; returns
+    // false in that case
+    public boolean createMembership(UsuarioPalomar relation) throws ExecutionException, InterruptedException {
+        String id = membershipId(relation.getUsuarioId(), relation.getPalomarId());
+        relation.setId(id);
+        try {
+            firestore.collection(getCollectionName()).document(id).create(relation).get();
+            return true;
+        } catch (ExecutionException e) {
+            if (isAlreadyExists(e)) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    public CompletableFuture<List<UsuarioPalomar>> findByUsuarioIdAsync(String usuarioId) {
+        return findByFieldAsync("usuario_id", usuarioId);
+    }
+
+    public CompletableFuture<List<UsuarioPalomar>> findByPalomarIdAsync(String palomarId) {
+        return findByFieldAsync("palomar_id", palomarId);
+    }
+
+    public CompletableFuture<Optional<UsuarioPalomar>> findByUsuarioIdAndPalomarIdAsync(String usuarioId, String palomarId) {
+        return findByIdAsync(membershipId(usuarioId, palomarId))
+                .thenCompose(relation -> {
+                    if (relation.isPresent() || !legacyFallback) {
+                        return CompletableFuture.completedFuture(relation);
+                    }
+                    return findLegacyRelationAsync(usuarioId, palomarId);
+                });
+    }
+
+    private CompletableFuture<Optional<UsuarioPalomar>> findLegacyRelationAsync(String usuarioId, String palomarId) {
+        return findByUsuarioIdAsync(usuarioId)
+                .thenApply(relations -> relations.stream()
+                        .filter(up -> palomarId.equals(up.getPalomarId()))
+                        .findFirst())
+                .thenCompose(legacy -> {
+                    if (legacy.isEmpty()) {
+                        return CompletableFuture.completedFuture(legacy);
+                    }
+                    System.out.println("UsuarioPalomarRepository: Migrating legacy relation " + legacy.get().getId());
+                    return migrateAsync(List.of(legacy.get()), Set.of()).thenApply(count -> legacy);
+                });
+    }
+
+    // Online backfill: rewrites every legacy relation under its membership id
+    public int migrateToMembershipIds() throws ExecutionException, InterruptedException {
+        List<UsuarioPalomar> relations = findAll();
+        Set<String> existingIds = new HashSet<>();
+        relations.forEach(up -> existingIds.add(up.getId()));
+        List<UsuarioPalomar> legacy = relations.stream()
+                .filter(up -> up.getUsuarioId() != null && up.getPalomarId() != null)
+                .filter(up -> !membershipId(up.getUsuarioId(), up.getPalomarId()).equals(up.getId()))
+                .toList();
+
+        int migrated = 0;
+        for (int i = 0; i < legacy.size(); i += MIGRATION_BATCH_SIZE) {
+            List<UsuarioPalomar> chunk = legacy.subList(i, Math.min(i + MIGRATION_BATCH_SIZE, legacy.size()));
+            migrated += migrateAsync(chunk, existingIds).get();
+        }
+
+        System.out.println("UsuarioPalomarRepository: Migrated " + migrated + " legacy relations");
+        return migrated;
+    }
+
+    private CompletableFuture<Integer> migrateAsync(List<UsuarioPalomar> legacyRelations, Set<String> existingIds) {
+        CollectionReference collection = firestore.collection(getCollectionName());
+        WriteBatch batch = firestore.batch();
+        Set<String> written = new HashSet<>();
+        for (UsuarioPalomar relation : legacyRelations) {
+            String legacyId = relation.getId();
+            String id = membershipId(relation.getUsuarioId(), relation.getPalomarId());
+            // A relation already stored under its membership id wins over legacy duplicates
+            if (!existingIds.contains(id) && written.add(id)) {
+                batch.set(collection.document(id), relation);
+            }
+            batch.delete(collection.document(legacyId));
+            relation.setId(id);
+        }
+        return toCompletableFuture(batch.commit()).thenApply(results -> legacyRelations.size());
+    }
+
+    private static boolean isAlreadyExists(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof ApiException apiException
+                    && apiException.getStatusCode().getCode() == StatusCode.Code.ALREADY_EXISTS) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,14 +1,24 @@
 package com.pigeonpulse.repository;
 
+import com.google.cloud.firestore.DocumentSnapshot;
 import com.pigeonpulse.model.Usuario;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
+import java.time.Duration;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
 @Repository
 public class UsuarioRepository extends FirebaseRepository<Usuario> {
 
+    @Value("${cache.usuarios.max-size:10000}")
+    private long cacheMaxSize;
+
+    @Value("${cache.usuarios.ttl:10m}")
+    private Duration cacheTtl;
+
     @Override
     protected String getCollectionName() {
         return "usuarios_v2";
@@ -19,6 +29,11 @@ public class UsuarioRepository extends FirebaseRepository<Usuario> {
         return Usuario.class;
     }
 
+    @Override
+    protected EntityCache<DocumentSnapshot> createEntityCache() {
+        return new CaffeineEntityCache<>(cacheMaxSize, cacheTtl);
+    }
+
     public Optional<Usuario> findByEmail(String email) throws ExecutionException, InterruptedException {
         return findByField("email", email).stream().findFirst();
     }
@@ -26,4 +41,12 @@ public class UsuarioRepository extends FirebaseRepository<Usuario> {
     public Optional<Usuario> findByGoogleId(String googleId) throws ExecutionException, InterruptedException {
         return findByField("googleId", googleId).stream().findFirst();
     }
-}
\ No newline at end of file
+
+    public CompletableFuture<Optional<Usuario>> findByEmailAsync(String email) {
+        return findByFieldAsync("email", email).thenApply(usuarios -> usuarios.stream().findFirst());
+    }
+
+    public CompletableFuture<Optional<Usuario>> findByGoogleIdAsync(String googleId) {
+        return findByFieldAsync("googleId", googleId).thenApply(usuarios -> usuarios.stream().findFirst());
+    }
+}
@@ -1,6 +1,5 @@
 package com.pigeonpulse.security;
 
-import com.pigeonpulse.model.Palomar;
 import com.pigeonpulse.service.PalomarService;
 import com.pigeonpulse.service.UsuarioPalomarService;
 import com.pigeonpulse.service.UsuarioService;
@@ -11,7 +10,10 @@ import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
@@ -19,6 +21,8 @@ import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 
 @Component
@@ -38,6 +42,13 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     @Autowired
     private UsuarioPalomarService usuarioPalomarService;
 
+    @Autowired
+    private PalomarContextCache palomarContextCache;
+
+    // Users allowed to run maintenance endpoints (ROLE_ADMIN)
+    @Value("${security.admin-emails:}")
+    private Set<String> adminEmails;
+
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
             throws ServletException, IOException {
@@ -57,6 +68,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         String userId = null;
         String jwtToken = null;
+        VerifiedToken verifiedToken = null;
 
         // Debug logging
         System.out.println("JwtAuthenticationFilter: Processing request to " + requestURI);
@@ -66,7 +78,8 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             jwtToken = requestTokenHeader.substring(7);
             System.out.println("JwtAuthenticationFilter: JWT token extracted, length: " + jwtToken.length());
             try {
-                userId = jwtUtil.extractUserId(jwtToken);
+                verifiedToken = jwtUtil.verify(jwtToken);
+                userId = verifiedToken.userId();
                 System.out.println("JwtAuthenticationFilter: Extracted userId: " + userId);
             } catch (Exception e) {
                 System.out.println("JwtAuthenticationFilter: Unable to get JWT Token or JWT Token has expired: " + e.getMessage());
@@ -79,50 +92,36 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         if (userId != null && SecurityContextHolder.getContext().getAuthentication() == null) {
             try {
                 // Extract palomar context from JWT
-                String palomarId = jwtUtil.extractPalomarId(jwtToken);
-                String rol = jwtUtil.extractRol(jwtToken);
+                String palomarId = verifiedToken.palomarId();
+                String rol = verifiedToken.rol();
 
                 System.out.println("JwtAuthenticationFilter: Extracted palomarId: " + palomarId);
                 System.out.println("JwtAuthenticationFilter: Extracted rol: " + rol);
 
                 if (palomarId != null && rol != null) {
-                    System.out.println("JwtAuthenticationFilter: Validating user exists...");
-                    // Validate user exists
-                    var usuarioOpt = usuarioService.findById(userId);
-                    if (usuarioOpt.isPresent()) {
-                        var usuario = usuarioOpt.get();
-                        System.out.println("JwtAuthenticationFilter: User found: " + usuario.getId());
-
-                        boolean tokenValid = jwtUtil.validateToken(jwtToken, userId);
-                        System.out.println("JwtAuthenticationFilter: Token valid: " + tokenValid);
-
-                        if (tokenValid) {
-                            System.out.println("JwtAuthenticationFilter: Getting palomar details...");
-                            // Get palomar details (this is the user's default palomar from JWT, used for context)
-                            var palomarOpt = palomarService.findById(palomarId);
-                            if (palomarOpt.isPresent()) {
-                                var palomar = palomarOpt.get();
-                                System.out.println("JwtAuthenticationFilter: Palomar found: " + palomar.getId());
-
-                                // Create palomar context with user's default palomar
-                                // Note: Individual endpoints will validate specific palomar access as needed
-                                PalomarContext palomarContext = new PalomarContext(usuario, palomar, rol);
-                                System.out.println("JwtAuthenticationFilter: Setting authentication context");
-
-                                UsernamePasswordAuthenticationToken authenticationToken =
-                                        new UsernamePasswordAuthenticationToken(palomarContext, null, new ArrayList<>());
-                                authenticationToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-                                SecurityContextHolder.getContext().setAuthentication(authenticationToken);
-
-                                System.out.println("JwtAuthenticationFilter: Authentication context set successfully");
-                            } else {
-                                System.out.println("JwtAuthenticationFilter: Palomar not found");
+                    boolean tokenValid = jwtUtil.validateToken(verifiedToken, userId);
+                    System.out.println("JwtAuthenticationFilter: Token valid: " + tokenValid);
+
+                    if (tokenValid) {
+                        // Note: Individual endpoints will validate specific palomar access as needed
+                        PalomarContext palomarContext = resolvePalomarContext(userId, palomarId, rol);
+                        if (palomarContext != null) {
+                            System.out.println("JwtAuthenticationFilter: Setting authentication context");
+
+                            List<GrantedAuthority> authorities = new ArrayList<>();
+                            String email = palomarContext.getUsuario() != null ? palomarContext.getUsuario().getEmail() : null;
+                            if (email != null && adminEmails.contains(email)) {
+                                authorities.add(new SimpleGrantedAuthority("ROLE_ADMIN"));
                             }
-                        } else {
-                            System.out.println("JwtAuthenticationFilter: Token invalid");
+                            UsernamePasswordAuthenticationToken authenticationToken =
+                                    new UsernamePasswordAuthenticationToken(palomarContext, null, authorities);
+                            authenticationToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                            SecurityContextHolder.getContext().setAuthentication(authenticationToken);
+
+                            System.out.println("JwtAuthenticationFilter: Authentication context set successfully");
                         }
                     } else {
-                        System.out.println("JwtAuthenticationFilter: User not found");
+                        System.out.println("JwtAuthenticationFilter: Token invalid");
                     }
                 } else {
                     System.out.println("JwtAuthenticationFilter: palomarId or rol is null");
@@ -136,4 +135,32 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
         chain.doFilter(request, response);
     }
+
+    // Context for the user's default palomar from the JWT, served from cache when possible
+    private PalomarContext resolvePalomarContext(String userId, String palomarId, String rol)
+            throws ExecutionException, InterruptedException {
+        var cached = palomarContextCache.get(userId, palomarId, rol);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+
+        // Load user and palomar concurrently
+        var usuarioFuture = usuarioService.findByIdAsync(userId);
+        var palomarFuture = palomarService.findByIdAsync(palomarId);
+        var usuarioOpt = usuarioFuture.get();
+        var palomarOpt = palomarFuture.get();
+
+        if (usuarioOpt.isEmpty()) {
+            System.out.println("JwtAuthenticationFilter: User not found");
+            return null;
+        }
+        if (palomarOpt.isEmpty()) {
+            System.out.println("JwtAuthenticationFilter: Palomar not found");
+            return null;
+        }
+
+        PalomarContext palomarContext = new PalomarContext(usuarioOpt.get(), palomarOpt.get(), rol);
+        palomarContextCache.put(palomarContext);
+        return palomarContext;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,54 @@
+package com.pigeonpulse.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.pigeonpulse.event.PalomarChangedEvent;
+import com.pigeonpulse.event.UsuarioChangedEvent;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+
+// Resolved authentication contexts, so authenticated requests skip the usuario/palomar reads
+@Component
+public class PalomarContextCache {
+
+    private record Key(String usuarioId, String palomarId, String rol) {}
+
+    @Value("${auth.context-cache.max-size:10000}")
+    private long maxSize;
+
+    @Value("${auth.context-cache.ttl:5m}")
+    private Duration ttl;
+
+    private Cache<Key, PalomarContext> contexts;
+
+    @PostConstruct
+    void init() {
+        contexts = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    public Optional<PalomarContext> get(String usuarioId, String palomarId, String rol) {
+        return Optional.ofNullable(contexts.getIfPresent(new Key(usuarioId, palomarId, rol)));
+    }
+
+    public void put(PalomarContext palomarContext) {
+        contexts.put(new Key(palomarContext.getUsuarioId(), palomarContext.getPalomarId(), palomarContext.getRol()), palomarContext);
+    }
+
+    @EventListener
+    public void onUsuarioChanged(UsuarioChangedEvent event) {
+        contexts.asMap().keySet().removeIf(key -> key.usuarioId().equals(event.usuarioId()));
+    }
+
+    @EventListener
+    public void onPalomarChanged(PalomarChangedEvent event) {
+        contexts.asMap().keySet().removeIf(key -> key.palomarId().equals(event.palomarId()));
+    }
+}
@@ -0,0 +1,17 @@
+package com.pigeonpulse.security;
+
+import java.time.Instant;
+
+// Claims of a token whose signature has already been checked
+public record VerifiedToken(
+    String userId,
+    String email,
+    String palomarId,
+    String rol,
+    Instant expiration
+) {
+
+    public boolean isExpired() {
+        return expiration != null && !Instant.now().isBefore(expiration);
+    }
+}
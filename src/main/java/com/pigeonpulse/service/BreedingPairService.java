@@ -0,0 +1,150 @@
+package com.pigeonpulse.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.pigeonpulse.model.Paloma;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Ranks macho x hembra pairings of a palomar by the inbreeding their offspring would have,
+// which is the coancestry of the two parents
+@Service
+public class BreedingPairService {
+
+    public record Pair(Paloma macho, Paloma hembra, double consanguinidadEsperada) {}
+
+    // Coancestry of every candidate pair, row-major by macho
+    private record PairMatrix(List<Paloma> machos, List<Paloma> hembras, float[] kinship) {}
+
+    private record Key(String palomarId, String linea, String estado, long graphVersion) {}
+
+    private static final int ROWS_PER_TASK = 16;
+
+    @Autowired
+    private PalomaService palomaService;
+
+    @Autowired
+    private KinshipService kinshipService;
+
+    @Value("${breeding.matrix-cache.max-cells:10000000}")
+    private long maxCachedCells;
+
+    @Value("${breeding.matrix-cache.ttl:10m}")
+    private Duration ttl;
+
+    private Cache<Key, PairMatrix> matrices;
+
+    @PostConstruct
+    void init() {
+        matrices = Caffeine.newBuilder()
+                .maximumWeight(maxCachedCells)
+                .weigher((Key key, PairMatrix matrix) -> matrix.kinship().length + 1)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    public List<Pair> recommend(String palomarId, String linea, String estado, int limit) throws ExecutionException, InterruptedException {
+        KinshipCalculator calculator = kinshipService.getCalculator(palomarId);
+        // The graph version changes on every paloma write this instance sees and on every graph
+        // rebuild, which also covers changes of sexo, estado or linea. Writes made on other
+        // instances only show up once the graph is rebuilt; the ttl bounds how long a matrix lives
+        Key key = new Key(palomarId, linea, estado, calculator.version());
+        PairMatrix matrix = matrices.getIfPresent(key);
+        if (matrix == null) {
+            matrix = buildMatrix(calculator, palomaService.findByPalomarId(palomarId, estado, null, linea, null));
+            matrices.put(key, matrix);
+        }
+        return topPairs(matrix, limit);
+    }
+
+    private static PairMatrix buildMatrix(KinshipCalculator calculator, List<Paloma> candidates) {
+        List<Paloma> machos = new ArrayList<>();
+        List<Paloma> hembras = new ArrayList<>();
+        for (Paloma paloma : candidates) {
+            if (calculator.nodeOf(paloma.getId()) == null) {
+                continue;
+            }
+            if ("Macho".equals(paloma.getSexo())) {
+                machos.add(paloma);
+            } else if ("Hembra".equals(paloma.getSexo())) {
+                hembras.add(paloma);
+            }
+        }
+
+        int[] machoNodes = machos.stream().mapToInt(p -> calculator.nodeOf(p.getId())).toArray();
+        int[] hembraNodes = hembras.stream().mapToInt(p -> calculator.nodeOf(p.getId())).toArray();
+        float[] kinship = new float[machoNodes.length * hembraNodes.length];
+        ForkJoinPool.commonPool().invoke(new RowsTask(calculator, machoNodes, hembraNodes, kinship, 0, machoNodes.length));
+        return new PairMatrix(machos, hembras, kinship);
+    }
+
+    // Lowest coefficients first, selected with a bounded max-heap over matrix cells
+    private static List<Pair> topPairs(PairMatrix matrix, int limit) {
+        float[] kinship = matrix.kinship();
+        PriorityQueue<Integer> best = new PriorityQueue<>(limit + 1,
+                Comparator.comparingDouble((Integer cell) -> kinship[cell]).reversed());
+        for (int cell = 0; cell < kinship.length; cell++) {
+            if (best.size() < limit) {
+                best.add(cell);
+            } else if (kinship[cell] < kinship[best.peek()]) {
+                best.poll();
+                best.add(cell);
+            }
+        }
+
+        int columns = matrix.hembras().size();
+        List<Pair> pairs = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            int cell = best.poll();
+            pairs.add(new Pair(matrix.machos().get(cell / columns), matrix.hembras().get(cell % columns), kinship[cell]));
+        }
+        Collections.reverse(pairs);
+        return pairs;
+    }
+
+    private static class RowsTask extends RecursiveAction {
+        private final KinshipCalculator calculator;
+        private final int[] machos;
+        private final int[] hembras;
+        private final float[] kinship;
+        private final int from;
+        private final int to;
+
+        RowsTask(KinshipCalculator calculator, int[] machos, int[] hembras, float[] kinship, int from, int to) {
+            this.calculator = calculator;
+            this.machos = machos;
+            this.hembras = hembras;
+            this.kinship = kinship;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= ROWS_PER_TASK) {
+                for (int row = from; row < to; row++) {
+                    int offset = row * hembras.length;
+                    for (int column = 0; column < hembras.length; column++) {
+                        kinship[offset + column] = (float) calculator.pairKinship(machos[row], hembras[column]);
+                    }
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RowsTask(calculator, machos, hembras, kinship, from, middle),
+                    new RowsTask(calculator, machos, hembras, kinship, middle, to));
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.pigeonpulse.service;
+
+import com.pigeonpulse.dto.CensoRequest;
+import com.pigeonpulse.dto.Filtros;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+// Rendered censo PDFs on local disk, addressed by a hash of the palomar data version and every
+// request field that shows up in the document. Least recently used files are evicted once the
+// total size goes over reports.cache.max-bytes
+@Service
+public class CensoPdfCache {
+
+    @FunctionalInterface
+    public interface PdfRenderer {
+        void render(OutputStream out) throws IOException;
+    }
+
+    @Value("${reports.cache.dir:${java.io.tmpdir}/pigeonpulse-censo-cache}")
+    private Path directory;
+
+    @Value("${reports.cache.max-bytes:209715200}")
+    private long maxBytes;
+
+    private final Map<String, Long> sizes = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+
+    @PostConstruct
+    void init() throws IOException {
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".pdf")) {
+                    long size = Files.size(file);
+                    sizes.put(name.substring(0, name.length() - 4), size);
+                    totalBytes.addAndGet(size);
+                } else {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    public static String key(String palomarId, long version, LocalDate fechaGeneracion, String palomarNombre, CensoRequest request) {
+        Filtros filtros = request.filtros() != null ? request.filtros() : new Filtros(null, null, null);
+        List<Object> fields = List.of(
+                "censo-v2", palomarId, version, fechaGeneracion, String.valueOf(palomarNombre),
+                String.valueOf(request.nombrePropietario()), String.valueOf(request.telefono()), String.valueOf(request.domicilio()),
+                String.valueOf(filtros.año()), String.valueOf(filtros.linea()), String.valueOf(filtros.estado()));
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Object field : fields) {
+                byte[] bytes = field.toString().getBytes(StandardCharsets.UTF_8);
+                // Length prefix keeps ("ab", "c") and ("a", "bc") apart
+                digest.update((bytes.length + ":").getBytes(StandardCharsets.UTF_8));
+                digest.update(bytes);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    public Optional<Path> get(String key) {
+        if (!sizes.containsKey(key)) {
+            return Optional.empty();
+        }
+        Path file = file(key);
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return Optional.of(file);
+        } catch (IOException e) {
+            forget(key);
+            return Optional.empty();
+        }
+    }
+
+    // Copies a cached PDF to out; false if it was evicted in the meantime
+    public boolean copyTo(Path file, OutputStream out) throws IOException {
+        try {
+            Files.copy(file, out);
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    // Renders to out and to the cache at the same time; the entry only becomes visible once
+    // rendering finished without errors
+    public void writeThrough(String key, OutputStream out, PdfRenderer renderer) throws IOException {
+        Path partial = directory.resolve(key + "." + UUID.randomUUID() + ".part");
+        try {
+            try (OutputStream file = Files.newOutputStream(partial)) {
+                renderer.render(new TeeOutputStream(out, file));
+            }
+            Files.move(partial, file(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+
+        long size = Files.size(file(key));
+        Long previous = sizes.put(key, size);
+        totalBytes.addAndGet(size - (previous != null ? previous : 0));
+        if (totalBytes.get() > maxBytes) {
+            evict();
+        }
+    }
+
+    private synchronized void evict() {
+        List<Map.Entry<Path, FileTime>> files = new ArrayList<>();
+        for (String key : sizes.keySet()) {
+            try {
+                files.add(Map.entry(file(key), Files.getLastModifiedTime(file(key))));
+            } catch (IOException e) {
+                forget(key);
+            }
+        }
+        files.sort(Map.Entry.comparingByValue(Comparator.naturalOrder()));
+        for (Map.Entry<Path, FileTime> entry : files) {
+            if (totalBytes.get() <= maxBytes) {
+                break;
+            }
+            String name = entry.getKey().getFileName().toString();
+            String key = name.substring(0, name.length() - 4);
+            try {
+                Files.deleteIfExists(entry.getKey());
+            } catch (IOException e) {
+                System.out.println("CensoPdfCache: Could not delete " + entry.getKey() + ": " + e.getMessage());
+            }
+            forget(key);
+        }
+    }
+
+    private void forget(String key) {
+        Long size = sizes.remove(key);
+        if (size != null) {
+            totalBytes.addAndGet(-size);
+        }
+    }
+
+    private Path file(String key) {
+        return directory.resolve(key + ".pdf");
+    }
+
+    private static class TeeOutputStream extends OutputStream {
+        private final OutputStream first;
+        private final OutputStream second;
+
+        TeeOutputStream(OutputStream first, OutputStream second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            first.write(b);
+            second.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            first.write(b, off, len);
+            second.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            first.flush();
+            second.flush();
+        }
+    }
+}
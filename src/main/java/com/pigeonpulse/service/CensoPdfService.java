@@ -0,0 +1,127 @@
+package com.pigeonpulse.service;
+
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.layout.Document;
+import com.itextpdf.layout.element.Paragraph;
+import com.itextpdf.layout.element.Table;
+import com.itextpdf.layout.properties.TextAlignment;
+import com.itextpdf.layout.properties.UnitValue;
+import com.pigeonpulse.dto.CensoRequest;
+import com.pigeonpulse.dto.Filtros;
+import com.pigeonpulse.model.Paloma;
+import com.pigeonpulse.model.Palomar;
+import com.pigeonpulse.repository.Page;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ExecutionException;
+
+// Lays out the censo PDF, reading the palomas page by page while it writes
+@Service
+public class CensoPdfService {
+
+    // Rows fetched from Firestore per page and added to the table before it is flushed
+    private static final int CENSO_PAGE_SIZE = 200;
+
+    @Autowired
+    private PalomaService palomaService;
+
+    // The generation date is passed in so a cached document can be keyed on the day it shows
+    public void writeCenso(OutputStream outputStream, Palomar palomar, String palomarId, CensoRequest request, LocalDate fechaGeneracion) throws IOException {
+        PdfWriter writer = new PdfWriter(outputStream);
+        writer.setCloseStream(false);
+        PdfDocument pdfDoc = new PdfDocument(writer);
+        Document document = new Document(pdfDoc);
+
+        // Header
+        document.add(new Paragraph("Documento generado por PalomaApp")
+                .setTextAlignment(TextAlignment.CENTER)
+                .setFontSize(16)
+                .setBold());
+
+        document.add(new Paragraph("Censo de Palomas")
+                .setTextAlignment(TextAlignment.CENTER)
+                .setFontSize(14)
+                .setBold());
+
+        document.add(new Paragraph("Palomar: " + palomar.getNombre())
+                .setTextAlignment(TextAlignment.LEFT));
+
+        document.add(new Paragraph("Propietario: " + request.nombrePropietario())
+                .setTextAlignment(TextAlignment.LEFT));
+
+        if (request.telefono() != null && !request.telefono().isEmpty()) {
+            document.add(new Paragraph("Teléfono: " + request.telefono())
+                    .setTextAlignment(TextAlignment.LEFT));
+        }
+
+        if (request.domicilio() != null && !request.domicilio().isEmpty()) {
+            document.add(new Paragraph("Domicilio: " + request.domicilio())
+                    .setTextAlignment(TextAlignment.LEFT));
+        }
+
+        document.add(new Paragraph("Fecha de generación: " +
+                fechaGeneracion.format(DateTimeFormatter.ofPattern("dd/MM/yyyy")))
+                .setTextAlignment(TextAlignment.LEFT));
+
+        document.add(new Paragraph(" ")); // Empty line
+
+        // Large table: rows are laid out and flushed as pages are read instead of all at the end
+        Table table = new Table(UnitValue.createPercentArray(new float[]{8, 6, 8, 8, 8, 8, 8, 8, 8}), true)
+                .useAllAvailableWidth();
+
+        // Headers
+        table.addHeaderCell("Anillo");
+        table.addHeaderCell("Año");
+        table.addHeaderCell("Sexo");
+        table.addHeaderCell("Color");
+        table.addHeaderCell("Línea");
+        table.addHeaderCell("Estado");
+        table.addHeaderCell("Padre");
+        table.addHeaderCell("Madre");
+        table.addHeaderCell("Observaciones");
+        document.add(table);
+
+        // Data rows
+        Filtros filtros = request.filtros() != null ? request.filtros() : new Filtros(null, null, null);
+        long total = 0;
+        String cursor = null;
+        try {
+            do {
+                Page<Paloma> page = palomaService.findExportPage(palomarId, filtros.estado(), filtros.linea(), filtros.año(), cursor, CENSO_PAGE_SIZE);
+                for (Paloma paloma : page.items()) {
+                    table.addCell(paloma.getAnillo() != null ? paloma.getAnillo() : "");
+                    table.addCell(paloma.getAño() != null ? paloma.getAño().toString() : "");
+                    table.addCell(paloma.getSexo() != null ? paloma.getSexo() : "");
+                    table.addCell(paloma.getColor() != null ? paloma.getColor() : "");
+                    table.addCell(paloma.getLinea() != null ? paloma.getLinea() : "");
+                    table.addCell(paloma.getEstado() != null ? paloma.getEstado() : "");
+                    table.addCell(paloma.getPadre() != null ? paloma.getPadre() : "");
+                    table.addCell(paloma.getMadre() != null ? paloma.getMadre() : "");
+                    table.addCell(paloma.getObservaciones() != null ? paloma.getObservaciones() : "");
+                }
+                total += page.items().size();
+                table.flush();
+                cursor = page.nextCursor();
+            } while (cursor != null);
+        } catch (ExecutionException e) {
+            throw new IOException("Error al leer las palomas del censo", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Generación del censo interrumpida", e);
+        }
+        table.complete();
+
+        // Footer
+        document.add(new Paragraph(" "));
+        document.add(new Paragraph("Total de palomas: " + total)
+                .setTextAlignment(TextAlignment.LEFT));
+
+        document.close();
+    }
+}
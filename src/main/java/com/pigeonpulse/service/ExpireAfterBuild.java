@@ -0,0 +1,32 @@
+package com.pigeonpulse.service;
+
+import com.github.benmanes.caffeine.cache.Expiry;
+
+import java.time.Duration;
+
+// Expires an entry a fixed time after it was first cached. In-place updates (re-weighing after
+// an event) and reads do not extend it, so even a busy entry is rebuilt from Firestore
+// periodically and picks up any write its events missed
+class ExpireAfterBuild<K, V> implements Expiry<K, V> {
+
+    private final long ttlNanos;
+
+    ExpireAfterBuild(Duration ttl) {
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    @Override
+    public long expireAfterCreate(K key, V value, long currentTime) {
+        return ttlNanos;
+    }
+
+    @Override
+    public long expireAfterUpdate(K key, V value, long currentTime, long currentDuration) {
+        return currentDuration;
+    }
+
+    @Override
+    public long expireAfterRead(K key, V value, long currentTime, long currentDuration) {
+        return currentDuration;
+    }
+}
@@ -0,0 +1,159 @@
+package com.pigeonpulse.service;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Coefficients of coancestry (kinship) over a pedigree snapshot, using the recursive tabular
+// method: f(a,a) = (1 + f(padre,madre)) / 2 and, with a not older than b,
+// f(a,b) = (f(padre(a),b) + f(madre(a),b)) / 2. Results are memoized per pair, so one
+// instance can be shared by concurrent requests on the same graph version. The memo stops
+// growing at maxMemoEntries; pairs past that are recomputed instead
+public class KinshipCalculator {
+
+    private final PedigreeGraph.Snapshot snapshot;
+    private final int[] padre;
+    private final int[] madre;
+    // Position in a parents-first order; birds in or below a pedigree cycle get -1
+    private final int[] order;
+    private final Map<String, Integer> nodeByPalomaId = new HashMap<>();
+    private final ConcurrentHashMap<Long, Double> memo = new ConcurrentHashMap<>();
+    private final int maxMemoEntries;
+
+    public KinshipCalculator(PedigreeGraph.Snapshot snapshot, int maxMemoEntries) {
+        this.snapshot = snapshot;
+        this.maxMemoEntries = maxMemoEntries;
+        int size = snapshot.size();
+        this.padre = snapshot.padre();
+        this.madre = snapshot.madre();
+        this.order = topologicalOrder(size, padre, madre);
+        String[] palomaIds = snapshot.palomaIds();
+        for (int node = 0; node < size; node++) {
+            if (palomaIds[node] != null) {
+                nodeByPalomaId.put(palomaIds[node], node);
+            }
+        }
+    }
+
+    public long version() {
+        return snapshot.version();
+    }
+
+    public Integer nodeOf(String palomaId) {
+        return nodeByPalomaId.get(palomaId);
+    }
+
+    public String anilloOf(int node) {
+        return snapshot.anillos()[node];
+    }
+
+    public String palomaIdOf(int node) {
+        return snapshot.palomaIds()[node];
+    }
+
+    public int size() {
+        return snapshot.size();
+    }
+
+    // Wright's inbreeding coefficient: the coancestry of the bird's parents
+    public double inbreeding(int node) {
+        return kinship(parentOf(padre, node), parentOf(madre, node));
+    }
+
+    // Coefficient of relationship r = 2 f(a,b) / sqrt((1 + Fa)(1 + Fb))
+    public double relationship(int a, int b) {
+        double denominator = Math.sqrt((1 + inbreeding(a)) * (1 + inbreeding(b)));
+        return 2 * kinship(a, b) / denominator;
+    }
+
+    public double kinship(int a, int b) {
+        if (a == PedigreeGraph.NONE || b == PedigreeGraph.NONE) {
+            return 0.0;
+        }
+        long key = key(a, b);
+        Double cached = memo.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        double value = compute(a, b);
+        if (memo.size() < maxMemoEntries) {
+            memo.put(key, value);
+        }
+        return value;
+    }
+
+    // Kinship of a pair that is asked for once, such as one cell of a pairing matrix: only the
+    // ancestor pairs it recurses into are memoized, not the pair itself
+    public double pairKinship(int a, int b) {
+        if (a == PedigreeGraph.NONE || b == PedigreeGraph.NONE) {
+            return 0.0;
+        }
+        Double cached = memo.get(key(a, b));
+        return cached != null ? cached : compute(a, b);
+    }
+
+    private double compute(int a, int b) {
+        if (a == b) {
+            return 0.5 * (1 + kinship(parentOf(padre, a), parentOf(madre, a)));
+        }
+        // Recurse on the younger bird, which cannot be an ancestor of the other
+        int younger = order[a] >= order[b] ? a : b;
+        int other = younger == a ? b : a;
+        return 0.5 * (kinship(parentOf(padre, younger), other) + kinship(parentOf(madre, younger), other));
+    }
+
+    private static long key(int a, int b) {
+        return a <= b ? ((long) a << 32) | b : ((long) b << 32) | a;
+    }
+
+    // Parents of unordered birds are treated as unknown so the recursion terminates
+    private int parentOf(int[] parents, int node) {
+        int parent = parents[node];
+        if (parent == PedigreeGraph.NONE || order[node] < 0 || order[parent] < 0) {
+            return PedigreeGraph.NONE;
+        }
+        return parent;
+    }
+
+    private static int[] topologicalOrder(int size, int[] padre, int[] madre) {
+        int[] pendingParents = new int[size];
+        int[][] children = new int[size][];
+        int[] childCount = new int[size];
+        for (int node = 0; node < size; node++) {
+            for (int parent : new int[]{padre[node], madre[node]}) {
+                if (parent != PedigreeGraph.NONE) {
+                    pendingParents[node]++;
+                    if (children[parent] == null) {
+                        children[parent] = new int[2];
+                    } else if (childCount[parent] == children[parent].length) {
+                        children[parent] = Arrays.copyOf(children[parent], childCount[parent] * 2);
+                    }
+                    children[parent][childCount[parent]++] = node;
+                }
+            }
+        }
+
+        int[] order = new int[size];
+        Arrays.fill(order, -1);
+        ArrayDeque<Integer> ready = new ArrayDeque<>();
+        for (int node = 0; node < size; node++) {
+            if (pendingParents[node] == 0) {
+                ready.add(node);
+            }
+        }
+        int position = 0;
+        while (!ready.isEmpty()) {
+            int node = ready.poll();
+            order[node] = position++;
+            for (int i = 0; i < childCount[node]; i++) {
+                int child = children[node][i];
+                if (--pendingParents[child] == 0) {
+                    ready.add(child);
+                }
+            }
+        }
+        return order;
+    }
+}
@@ -0,0 +1,82 @@
+package com.pigeonpulse.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.OptionalDouble;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.IntStream;
+
+// Inbreeding and relationship coefficients over the pedigree graph of a palomar. The memoized
+// calculator is reused while the graph version does not change; versions are unique across
+// graph instances, so a rebuilt graph always gets a new calculator
+@Service
+public class KinshipService {
+
+    public record Inbreeding(String palomaId, String anillo, double coeficiente) {}
+
+    @Autowired
+    private PedigreeIndexService pedigreeIndexService;
+
+    @Value("${kinship.cache.max-size:100}")
+    private long maxSize;
+
+    @Value("${kinship.cache.ttl:30m}")
+    private Duration ttl;
+
+    @Value("${kinship.memo.max-entries:1000000}")
+    private int maxMemoEntries;
+
+    private Cache<String, KinshipCalculator> calculators;
+
+    @PostConstruct
+    void init() {
+        calculators = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterAccess(ttl)
+                .build();
+    }
+
+    public KinshipCalculator getCalculator(String palomarId) throws ExecutionException, InterruptedException {
+        PedigreeGraph graph = pedigreeIndexService.getGraph(palomarId);
+        KinshipCalculator calculator = calculators.getIfPresent(palomarId);
+        if (calculator == null || calculator.version() != graph.version()) {
+            calculator = new KinshipCalculator(graph.snapshot(), maxMemoEntries);
+            calculators.put(palomarId, calculator);
+        }
+        return calculator;
+    }
+
+    public OptionalDouble inbreeding(String palomarId, String palomaId) throws ExecutionException, InterruptedException {
+        KinshipCalculator calculator = getCalculator(palomarId);
+        Integer node = calculator.nodeOf(palomaId);
+        return node == null ? OptionalDouble.empty() : OptionalDouble.of(calculator.inbreeding(node));
+    }
+
+    public OptionalDouble relationship(String palomarId, String palomaIdA, String palomaIdB) throws ExecutionException, InterruptedException {
+        KinshipCalculator calculator = getCalculator(palomarId);
+        Integer a = calculator.nodeOf(palomaIdA);
+        Integer b = calculator.nodeOf(palomaIdB);
+        if (a == null || b == null) {
+            return OptionalDouble.empty();
+        }
+        return OptionalDouble.of(calculator.relationship(a, b));
+    }
+
+    // Inbreeding of every bird in the palomar, computed in parallel over the shared memo
+    public List<Inbreeding> inbreedingReport(String palomarId) throws ExecutionException, InterruptedException {
+        KinshipCalculator calculator = getCalculator(palomarId);
+        return IntStream.range(0, calculator.size())
+                .parallel()
+                .filter(node -> calculator.palomaIdOf(node) != null)
+                .mapToObj(node -> new Inbreeding(calculator.palomaIdOf(node), calculator.anilloOf(node), calculator.inbreeding(node)))
+                .sorted((x, y) -> Double.compare(y.coeficiente(), x.coeficiente()))
+                .toList();
+    }
+}
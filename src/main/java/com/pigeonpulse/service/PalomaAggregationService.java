@@ -0,0 +1,230 @@
+package com.pigeonpulse.service;
+
+import com.pigeonpulse.model.Paloma;
+import com.pigeonpulse.repository.EntityQuery;
+import com.pigeonpulse.repository.Page;
+import com.pigeonpulse.repository.PalomaRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+// Cross-tab counts of the palomas of a palomar over any combination of dimensions.
+// Values are dictionary-encoded per dimension and each paloma becomes one packed cell key,
+// so counting is a single pass over an int[] with primitive counters
+@Service
+public class PalomaAggregationService {
+
+    public enum Dimension {
+        ESTADO("estado", Paloma::getEstado),
+        SEXO("sexo", Paloma::getSexo),
+        LINEA("linea", Paloma::getLinea),
+        AÑO("año", p -> p.getAño() != null ? p.getAño().toString() : null),
+        COLOR("color", Paloma::getColor),
+        TIPO_OJO("tipoOjo", Paloma::getTipoOjo);
+
+        private final String campo;
+        private final Function<Paloma, String> extractor;
+
+        Dimension(String campo, Function<Paloma, String> extractor) {
+            this.campo = campo;
+            this.extractor = extractor;
+        }
+
+        public String getCampo() {
+            return campo;
+        }
+
+        public static Dimension fromCampo(String campo) {
+            for (Dimension dimension : values()) {
+                if (dimension.campo.equalsIgnoreCase(campo)) {
+                    return dimension;
+                }
+            }
+            throw new IllegalArgumentException("Unknown dimension: " + campo);
+        }
+    }
+
+    // valores follows the order of the requested dimensions; null means the field is empty
+    public record Grupo(List<String> valores, long cantidad) {}
+
+    public record Resultado(List<String> dimensiones, long total, List<Grupo> grupos) {}
+
+    // Cells counted in a dense array; above this the packed keys are sorted and run-length counted
+    private static final int MAX_DENSE_CELLS = 1 << 20;
+
+    private static final int ROWS_PER_TASK = 8192;
+
+    @Autowired
+    private PalomaRepository palomaRepository;
+
+    @Value("${aggregation.page-size:1000}")
+    private int pageSize;
+
+    @Value("${aggregation.parallel-threshold:50000}")
+    private int parallelThreshold;
+
+    public Resultado aggregate(String palomarId, List<Dimension> dimensions) throws ExecutionException, InterruptedException {
+        int width = dimensions.size();
+        List<Map<String, Integer>> dictionaries = new ArrayList<>(width);
+        List<List<String>> decoded = new ArrayList<>(width);
+        for (int d = 0; d < width; d++) {
+            // Code 0 is reserved for an empty field
+            dictionaries.add(new HashMap<>());
+            List<String> values = new ArrayList<>();
+            values.add(null);
+            decoded.add(values);
+        }
+
+        // Only the grouped fields are read
+        String[] fields = dimensions.stream().map(Dimension::getCampo).toArray(String[]::new);
+        int[][] codes = new int[width][];
+        int rows = 0;
+        String cursor = null;
+        do {
+            EntityQuery query = EntityQuery.create()
+                    .whereEqualTo("palomarId", palomarId)
+                    .select(fields);
+            Page<Paloma> page = palomaRepository.findPage(query, cursor, pageSize);
+            for (int d = 0; d < width; d++) {
+                codes[d] = ensureCapacity(codes[d], rows + page.items().size());
+            }
+            for (Paloma paloma : page.items()) {
+                for (int d = 0; d < width; d++) {
+                    String value = dimensions.get(d).extractor.apply(paloma);
+                    if (value == null || value.isEmpty()) {
+                        continue;
+                    }
+                    List<String> values = decoded.get(d);
+                    codes[d][rows] = dictionaries.get(d).computeIfAbsent(value, v -> {
+                        values.add(v);
+                        return values.size() - 1;
+                    });
+                }
+                rows++;
+            }
+            cursor = page.nextCursor();
+        } while (cursor != null);
+
+        // Mixed-radix packing of the per-dimension codes into one cell key
+        long[] strides = new long[width];
+        long cells = 1;
+        for (int d = width - 1; d >= 0; d--) {
+            strides[d] = cells;
+            cells = Math.multiplyExact(cells, decoded.get(d).size());
+        }
+
+        List<Grupo> grupos = cells <= MAX_DENSE_CELLS
+                ? denseCount(codes, strides, rows, (int) cells, decoded)
+                : sparseCount(codes, strides, rows, decoded);
+        grupos.sort(Comparator.comparingLong(Grupo::cantidad).reversed());
+        return new Resultado(dimensions.stream().map(Dimension::getCampo).toList(), rows, grupos);
+    }
+
+    private List<Grupo> denseCount(int[][] codes, long[] strides, int rows, int cells, List<List<String>> decoded) {
+        long[] counts = rows >= parallelThreshold
+                ? ForkJoinPool.commonPool().invoke(new CountTask(codes, strides, cells, 0, rows))
+                : CountTask.count(codes, strides, cells, 0, rows);
+        List<Grupo> grupos = new ArrayList<>();
+        for (int cell = 0; cell < cells; cell++) {
+            if (counts[cell] > 0) {
+                grupos.add(new Grupo(decode(cell, strides, decoded), counts[cell]));
+            }
+        }
+        return grupos;
+    }
+
+    // Too many combinations for a dense array: sort the packed keys and count runs
+    private static List<Grupo> sparseCount(int[][] codes, long[] strides, int rows, List<List<String>> decoded) {
+        long[] keys = new long[rows];
+        for (int row = 0; row < rows; row++) {
+            keys[row] = CountTask.cell(codes, strides, row);
+        }
+        Arrays.parallelSort(keys);
+        List<Grupo> grupos = new ArrayList<>();
+        int start = 0;
+        for (int row = 1; row <= rows; row++) {
+            if (row == rows || keys[row] != keys[start]) {
+                grupos.add(new Grupo(decode(keys[start], strides, decoded), row - start));
+                start = row;
+            }
+        }
+        return grupos;
+    }
+
+    private static int[] ensureCapacity(int[] codes, int capacity) {
+        if (codes == null) {
+            return new int[Math.max(16, capacity)];
+        }
+        return codes.length >= capacity ? codes : Arrays.copyOf(codes, Math.max(codes.length * 2, capacity));
+    }
+
+    private static List<String> decode(long cell, long[] strides, List<List<String>> decoded) {
+        List<String> valores = new ArrayList<>(strides.length);
+        for (int d = 0; d < strides.length; d++) {
+            valores.add(decoded.get(d).get((int) (cell / strides[d])));
+            cell %= strides[d];
+        }
+        return valores;
+    }
+
+    // Counts a range of rows into a private array; halves are merged by summing
+    private static class CountTask extends RecursiveTask<long[]> {
+        private final int[][] codes;
+        private final long[] strides;
+        private final int cells;
+        private final int from;
+        private final int to;
+
+        CountTask(int[][] codes, long[] strides, int cells, int from, int to) {
+            this.codes = codes;
+            this.strides = strides;
+            this.cells = cells;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected long[] compute() {
+            // Each leaf allocates a full counter array, so leaves never hold fewer rows than cells
+            if (to - from <= Math.max(ROWS_PER_TASK, cells)) {
+                return count(codes, strides, cells, from, to);
+            }
+            int middle = (from + to) >>> 1;
+            CountTask left = new CountTask(codes, strides, cells, from, middle);
+            left.fork();
+            long[] counts = new CountTask(codes, strides, cells, middle, to).compute();
+            long[] other = left.join();
+            for (int cell = 0; cell < cells; cell++) {
+                counts[cell] += other[cell];
+            }
+            return counts;
+        }
+
+        static long[] count(int[][] codes, long[] strides, int cells, int from, int to) {
+            long[] counts = new long[cells];
+            for (int row = from; row < to; row++) {
+                counts[(int) cell(codes, strides, row)]++;
+            }
+            return counts;
+        }
+
+        static long cell(int[][] codes, long[] strides, int row) {
+            long cell = 0;
+            for (int d = 0; d < strides.length; d++) {
+                cell += codes[d][row] * strides[d];
+            }
+            return cell;
+        }
+    }
+}
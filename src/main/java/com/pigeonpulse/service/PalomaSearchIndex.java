@@ -0,0 +1,270 @@
+package com.pigeonpulse.service;
+
+import com.pigeonpulse.model.Paloma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+// Substring search over anillo, color and linea of one palomar. Every field value is lower-cased
+// once and split into trigrams; each trigram maps to a sorted posting list of int document ids.
+// A query intersects the postings of its trigrams and verifies the few candidates left
+public class PalomaSearchIndex {
+
+    private static final int[] NO_DOCS = new int[0];
+
+    // Positions of the searched fields in each texts entry
+    private static final int ANILLO = 0;
+    private static final int COLOR = 1;
+    private static final int LINEA = 2;
+
+    private static final class Postings {
+        private int[] docs = NO_DOCS;
+        private int size;
+
+        void add(int doc) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, Math.max(4, size * 2));
+            }
+            docs[size++] = doc;
+        }
+
+        void remove(int doc) {
+            int index = Arrays.binarySearch(docs, 0, size, doc);
+            if (index >= 0) {
+                System.arraycopy(docs, index + 1, docs, index, size - index - 1);
+                size--;
+            }
+        }
+    }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> docByPalomaId = new HashMap<>();
+    private final Map<Long, Postings> postings = new HashMap<>();
+
+    // Indexed by document id; entries of removed or replaced palomas are null. Document ids only
+    // grow, which keeps every posting list sorted on append
+    private final List<Paloma> palomas = new ArrayList<>();
+    private final List<String[]> texts = new ArrayList<>();
+
+    private PalomaSearchIndex() {
+    }
+
+    public static PalomaSearchIndex build(List<Paloma> palomas) {
+        PalomaSearchIndex index = new PalomaSearchIndex();
+        for (Paloma paloma : palomas) {
+            index.upsertInternal(paloma);
+        }
+        return index;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docByPalomaId.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void upsert(Paloma paloma) {
+        lock.writeLock().lock();
+        try {
+            upsertInternal(paloma);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String palomaId) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(palomaId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Palomas whose anillo, color or linea contains the query (ignoring case) and that pass the
+    // filter. Exact ring match first, then ring prefix, ring substring, exact color or linea and
+    // color or linea substring; ties by anillo. limit null returns every match
+    public List<Paloma> search(String query, Predicate<Paloma> filter, Integer limit) {
+        String needle = query.toLowerCase(Locale.ROOT);
+        lock.readLock().lock();
+        try {
+            List<int[]> matches = new ArrayList<>();
+            if (needle.length() < 3) {
+                // Too short for a trigram, check every paloma against the lower-cased values
+                for (int doc = 0; doc < palomas.size(); doc++) {
+                    collect(doc, needle, filter, matches);
+                }
+            } else {
+                int[] candidates = candidates(needle);
+                for (int doc : candidates) {
+                    collect(doc, needle, filter, matches);
+                }
+            }
+
+            matches.sort(Comparator.<int[]>comparingInt(match -> match[1])
+                    .thenComparing(match -> texts.get(match[0])[ANILLO]));
+            int count = limit != null ? Math.min(limit, matches.size()) : matches.size();
+            List<Paloma> result = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                result.add(palomas.get(matches.get(i)[0]));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void collect(int doc, String needle, Predicate<Paloma> filter, List<int[]> matches) {
+        Paloma paloma = palomas.get(doc);
+        if (paloma == null) {
+            return;
+        }
+        int rank = rank(texts.get(doc), needle);
+        if (rank >= 0 && filter.test(paloma)) {
+            matches.add(new int[]{doc, rank});
+        }
+    }
+
+    // Intersection of the posting lists of every trigram in the query, smallest list first
+    private int[] candidates(String needle) {
+        long[] keys = trigrams(needle);
+        Postings[] lists = new Postings[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            lists[i] = postings.get(keys[i]);
+            if (lists[i] == null) {
+                return NO_DOCS;
+            }
+        }
+        Arrays.sort(lists, Comparator.comparingInt(list -> list.size));
+
+        int[] result = Arrays.copyOf(lists[0].docs, lists[0].size);
+        int size = result.length;
+        for (int i = 1; i < lists.length && size > 0; i++) {
+            size = intersect(result, size, lists[i]);
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    // Keeps in docs[0..size) only the ids also present in other; both are sorted
+    private static int intersect(int[] docs, int size, Postings other) {
+        int kept = 0;
+        int j = 0;
+        for (int i = 0; i < size && j < other.size; ) {
+            if (docs[i] == other.docs[j]) {
+                docs[kept++] = docs[i];
+                i++;
+                j++;
+            } else if (docs[i] < other.docs[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return kept;
+    }
+
+    private static int rank(String[] text, String needle) {
+        String anillo = text[ANILLO];
+        if (anillo.equals(needle)) {
+            return 0;
+        }
+        if (anillo.startsWith(needle)) {
+            return 1;
+        }
+        if (anillo.contains(needle)) {
+            return 2;
+        }
+        if (text[COLOR].equals(needle) || text[LINEA].equals(needle)) {
+            return 3;
+        }
+        if (text[COLOR].contains(needle) || text[LINEA].contains(needle)) {
+            return 4;
+        }
+        return -1;
+    }
+
+    private void upsertInternal(Paloma paloma) {
+        if (paloma.getId() == null) {
+            return;
+        }
+        removeInternal(paloma.getId());
+
+        int doc = palomas.size();
+        String[] text = {lower(paloma.getAnillo()), lower(paloma.getColor()), lower(paloma.getLinea())};
+        palomas.add(paloma);
+        texts.add(text);
+        docByPalomaId.put(paloma.getId(), doc);
+        for (long key : trigrams(text)) {
+            postings.computeIfAbsent(key, k -> new Postings()).add(doc);
+        }
+
+        // Replaced entries leave holes; renumber once they outweigh the live ones
+        if (palomas.size() > 64 && palomas.size() > docByPalomaId.size() * 2) {
+            compact();
+        }
+    }
+
+    private void removeInternal(String palomaId) {
+        Integer doc = docByPalomaId.remove(palomaId);
+        if (doc == null) {
+            return;
+        }
+        for (long key : trigrams(texts.get(doc))) {
+            Postings list = postings.get(key);
+            if (list != null) {
+                list.remove(doc);
+                if (list.size == 0) {
+                    postings.remove(key);
+                }
+            }
+        }
+        palomas.set(doc, null);
+        texts.set(doc, null);
+    }
+
+    private void compact() {
+        List<Paloma> live = palomas.stream().filter(p -> p != null).toList();
+        docByPalomaId.clear();
+        postings.clear();
+        palomas.clear();
+        texts.clear();
+        live.forEach(this::upsertInternal);
+    }
+
+    // Distinct trigrams of the given values, sorted; trigrams never span two fields
+    private static long[] trigrams(String... values) {
+        int capacity = 0;
+        for (String value : values) {
+            capacity += Math.max(0, value.length() - 2);
+        }
+        long[] keys = new long[capacity];
+        int size = 0;
+        for (String value : values) {
+            for (int i = 0; i + 3 <= value.length(); i++) {
+                keys[size++] = ((long) value.charAt(i) << 32) | ((long) value.charAt(i + 1) << 16) | value.charAt(i + 2);
+            }
+        }
+        Arrays.sort(keys);
+        int distinct = 0;
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || keys[i] != keys[i - 1]) {
+                keys[distinct++] = keys[i];
+            }
+        }
+        return Arrays.copyOf(keys, distinct);
+    }
+
+    private static String lower(String value) {
+        return value == null ? "" : value.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,137 @@
+package com.pigeonpulse.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.pigeonpulse.event.PalomaChangedEvent;
+import com.pigeonpulse.model.Paloma;
+import com.pigeonpulse.repository.PalomaRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Keeps the search index of recently searched palomares in memory. An index is built from one
+// query the first time the palomar is searched and then kept in sync with PalomaChangedEvent
+@Service
+public class PalomaSearchService {
+
+    @Autowired
+    private PalomaRepository palomaRepository;
+
+    @Value("${search.index.max-palomas:500000}")
+    private long maxPalomas;
+
+    @Value("${search.index.ttl:30m}")
+    private Duration ttl;
+
+    private Cache<String, PalomaSearchIndex> indexes;
+
+    // Writes seen per palomar while its index is being built or cached; lets a build detect that
+    // it raced with a write. Entries go away with the index
+    private final Map<String, AtomicLong> writeCounters = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void init() {
+        indexes = Caffeine.newBuilder()
+                .maximumWeight(maxPalomas)
+                .weigher((String palomarId, PalomaSearchIndex index) -> index.size() + 1)
+                .expireAfter(new ExpireAfterBuild<String, PalomaSearchIndex>(ttl))
+                .removalListener((String palomarId, PalomaSearchIndex index, RemovalCause cause) -> {
+                    if (cause != RemovalCause.REPLACED && palomarId != null) {
+                        writeCounters.remove(palomarId);
+                    }
+                })
+                .build();
+    }
+
+    // Ranked matches of the query in anillo, color or linea; estado, sexo and linea filter
+    // the results when given
+    public List<Paloma> search(String palomarId, String query, String estado, String sexo, String linea, Integer limit) throws ExecutionException, InterruptedException {
+        return getIndex(palomarId).search(query, paloma ->
+                matches(estado, paloma.getEstado()) && matches(sexo, paloma.getSexo()) && matches(linea, paloma.getLinea()),
+                limit);
+    }
+
+    private PalomaSearchIndex getIndex(String palomarId) throws ExecutionException, InterruptedException {
+        PalomaSearchIndex index = indexes.getIfPresent(palomarId);
+        if (index != null) {
+            return index;
+        }
+
+        AtomicLong writes = writeCounters.computeIfAbsent(palomarId, id -> new AtomicLong());
+        long writesBefore = writes.get();
+        PalomaSearchIndex built = PalomaSearchIndex.build(palomaRepository.findByPalomarId(palomarId));
+        if (raced(palomarId, writes, writesBefore)) {
+            // A write landed while the palomar was being read; use the index for this call only
+            releaseCounter(palomarId, writes);
+            return built;
+        }
+        PalomaSearchIndex existing = indexes.asMap().putIfAbsent(palomarId, built);
+        if (existing != null) {
+            return existing;
+        }
+        if (raced(palomarId, writes, writesBefore)) {
+            // The write's event ran before the index was cached, so it never saw this index
+            indexes.asMap().remove(palomarId, built);
+        }
+        return built;
+    }
+
+    @EventListener
+    public void onPalomaChanged(PalomaChangedEvent event) {
+        Paloma before = event.before();
+        Paloma after = event.after();
+        String oldPalomarId = before != null ? before.getPalomarId() : null;
+        String newPalomarId = after != null ? after.getPalomarId() : null;
+
+        if (oldPalomarId != null && !Objects.equals(oldPalomarId, newPalomarId)) {
+            countWrite(oldPalomarId);
+            PalomaSearchIndex index = indexes.getIfPresent(oldPalomarId);
+            if (index != null) {
+                index.remove(event.palomaId());
+            }
+        }
+        if (newPalomarId != null) {
+            countWrite(newPalomarId);
+            PalomaSearchIndex index = indexes.getIfPresent(newPalomarId);
+            if (index != null) {
+                index.upsert(after);
+                // Re-weigh the entry now that the index may have grown
+                indexes.asMap().replace(newPalomarId, index, index);
+            }
+        }
+    }
+
+    private static boolean matches(String filter, String value) {
+        return filter == null || filter.isEmpty() || filter.equals(value);
+    }
+
+    // Only palomares with an index being built or cached are tracked
+    private void countWrite(String palomarId) {
+        AtomicLong writes = writeCounters.get(palomarId);
+        if (writes != null) {
+            writes.incrementAndGet();
+        }
+    }
+
+    // A counter replaced while building (its index was evicted meanwhile) also counts as a race
+    private boolean raced(String palomarId, AtomicLong writes, long writesBefore) {
+        return writes.get() != writesBefore || writeCounters.get(palomarId) != writes;
+    }
+
+    private void releaseCounter(String palomarId, AtomicLong writes) {
+        if (indexes.getIfPresent(palomarId) == null) {
+            writeCounters.remove(palomarId, writes);
+        }
+    }
+}
@@ -1,20 +1,61 @@
 package com.pigeonpulse.service;
 
+import com.pigeonpulse.event.PalomaChangedEvent;
 import com.pigeonpulse.model.Paloma;
+import com.pigeonpulse.model.PedigreeClosure;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.Query;
+import com.pigeonpulse.repository.EntityQuery;
+import com.pigeonpulse.repository.Page;
 import com.pigeonpulse.repository.PalomaRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
 @Service
 public class PalomaService {
 
+    // One bird of a progeny tree with the descendants placed under it
+    public record DescendantNode(Paloma paloma, int generation, List<DescendantNode> children) {}
+
+    // truncated is true when pedigree.descendants.max-nodes cut the tree short
+    public record DescendantTree(List<DescendantNode> children, boolean truncated) {}
+
+    // Ancestor shared by two birds with its distance in generations from each of them
+    public record CommonAncestor(Paloma paloma, int generationsA, int generationsB) {}
+
     @Autowired
     private PalomaRepository palomaRepository;
 
+    @Autowired
+    private PedigreeIndexService pedigreeIndexService;
+
+    @Autowired
+    private PedigreeClosureService pedigreeClosureService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${pedigree.descendants.max-nodes:2000}")
+    private int maxDescendantNodes;
+
     public Optional<Paloma> findById(String id) throws ExecutionException, InterruptedException {
         return palomaRepository.findById(id);
     }
@@ -27,6 +68,40 @@ public class PalomaService {
         return palomaRepository.findByPalomarId(palomarId);
     }
 
+    // Filters are pushed down to Firestore; null or empty values are ignored
+    public List<Paloma> findByPalomarId(String palomarId, String estado, String sexo, String linea, Integer año) throws ExecutionException, InterruptedException {
+        EntityQuery query = EntityQuery.create()
+                .whereEqualTo("palomarId", palomarId)
+                .whereEqualTo("estado", estado)
+                .whereEqualTo("sexo", sexo)
+                .whereEqualTo("linea", linea)
+                .whereEqualTo("año", año);
+        return palomaRepository.find(query);
+    }
+
+    // Keyset page of a palomar ordered by sortField (anillo, año or fechaRegistro)
+    public Page<Paloma> findPage(String palomarId, String estado, String sexo, String linea,
+                                 String sortField, boolean descending, String cursor, int limit) throws ExecutionException, InterruptedException {
+        EntityQuery query = EntityQuery.create()
+                .whereEqualTo("palomarId", palomarId)
+                .whereEqualTo("estado", estado)
+                .whereEqualTo("sexo", sexo)
+                .whereEqualTo("linea", linea)
+                .orderBy(sortField, descending ? Query.Direction.DESCENDING : Query.Direction.ASCENDING);
+        return palomaRepository.findPage(query, cursor, limit);
+    }
+
+    // Keyset page in document order, for exports that walk a whole palomar page by page
+    public Page<Paloma> findExportPage(String palomarId, String estado, String linea, Integer año,
+                                       String cursor, int limit) throws ExecutionException, InterruptedException {
+        EntityQuery query = EntityQuery.create()
+                .whereEqualTo("palomarId", palomarId)
+                .whereEqualTo("estado", estado)
+                .whereEqualTo("linea", linea)
+                .whereEqualTo("año", año);
+        return palomaRepository.findPage(query, cursor, limit);
+    }
+
     public List<Paloma> findByEstado(String estado) throws ExecutionException, InterruptedException {
         return palomaRepository.findByEstado(estado);
     }
@@ -48,73 +123,400 @@ public class PalomaService {
     }
 
     public String save(Paloma paloma) throws ExecutionException, InterruptedException {
-        return palomaRepository.save(paloma);
+        if (paloma.getFechaRegistroTimestamp() == null) {
+            paloma.setFechaRegistroTimestamp(Timestamp.now());
+        }
+        String id = palomaRepository.save(paloma);
+        paloma.setId(id);
+        eventPublisher.publishEvent(new PalomaChangedEvent(id, null, paloma));
+        return id;
     }
 
     public void update(String id, Paloma paloma) throws ExecutionException, InterruptedException {
+        // The previous version tells listeners which rings and palomar the bird is leaving
+        Paloma before = palomaRepository.findById(id).orElse(null);
+        // update replaces the whole document; a request without fechaRegistro keeps the stored one
+        if (paloma.getFechaRegistroTimestamp() == null && before != null) {
+            paloma.setFechaRegistroTimestamp(before.getFechaRegistroTimestamp());
+        }
         palomaRepository.update(id, paloma);
+        paloma.setId(id);
+        eventPublisher.publishEvent(new PalomaChangedEvent(id, before, paloma));
     }
 
     public void deleteById(String id) throws ExecutionException, InterruptedException {
+        Optional<Paloma> before = palomaRepository.findById(id);
         palomaRepository.deleteById(id);
+        before.ifPresent(paloma -> eventPublisher.publishEvent(new PalomaChangedEvent(id, paloma, null)));
     }
 
     // Genealogy methods
     public List<Paloma> getAncestors(String palomaId) throws ExecutionException, InterruptedException {
+        return getAncestors(palomaId, Integer.MAX_VALUE);
+    }
+
+    // Ancestors inside the palomar come from the bird's pedigree_closure document (read together
+    // with the bird, used only while the palomar's closure is marked built) or, when it is
+    // missing, stale or too shallow, from the in-memory pedigree graph;
+    // either way they are loaded with a single getAll. Lines that leave the palomar continue
+    // with batched Firestore queries
+    public List<Paloma> getAncestors(String palomaId, int maxGenerations) throws ExecutionException, InterruptedException {
         Optional<Paloma> palomaOpt = findById(palomaId);
-        if (palomaOpt.isEmpty()) {
-            return List.of();
+        return palomaOpt.isPresent() ? getAncestors(palomaOpt.get(), maxGenerations, null) : List.of();
+    }
+
+    // palomarIds limits where lines that leave the bird's palomar may continue; null allows any
+    public List<Paloma> getAncestors(Paloma paloma, int maxGenerations, Set<String> palomarIds) throws ExecutionException, InterruptedException {
+        String palomaId = paloma.getId();
+        Optional<PedigreeClosure> closure = pedigreeClosureService.findByPalomaIdAsync(palomaId).get();
+        if (closure.isPresent() && (!closure.get().isTruncado() || maxGenerations <= pedigreeClosureService.getMaxDepth())
+                && paloma.getPalomarId() != null && pedigreeClosureService.isBuilt(paloma.getPalomarId())) {
+            return ancestorsFromClosure(paloma, closure.get(), maxGenerations, palomarIds);
         }
 
-        Paloma paloma = palomaOpt.get();
-        List<Paloma> ancestors = new java.util.ArrayList<>();
-        java.util.Set<String> visited = new java.util.HashSet<>();
+        PedigreeGraph.AncestorScan scan = paloma.getPalomarId() != null
+                ? pedigreeIndexService.getGraph(paloma.getPalomarId()).ancestors(palomaId, maxGenerations)
+                : null;
+        if (scan == null) {
+            Set<String> visited = new HashSet<>();
+            if (paloma.getAnillo() != null) {
+                visited.add(paloma.getAnillo());
+            }
+            Map<String, Integer> parents = new LinkedHashMap<>();
+            for (String parent : new String[]{paloma.getPadre(), paloma.getMadre()}) {
+                if (hasText(parent) && visited.add(parent)) {
+                    parents.put(parent, 1);
+                }
+            }
+            return fetchAncestors(parents, maxGenerations, visited, paloma.getPalomarId(), palomarIds);
+        }
 
-        // Recursive function to collect all ancestors
-        collectAncestors(paloma, ancestors, visited);
+        List<Paloma> ancestors = new ArrayList<>(palomaRepository.findAllByIds(scan.palomaIds()));
+        if (!scan.externalAnillos().isEmpty()) {
+            Set<String> visited = new HashSet<>(scan.visitedAnillos());
+            ancestors.addAll(fetchAncestors(scan.externalAnillos(), maxGenerations, visited, paloma.getPalomarId(), palomarIds));
+        }
+        return ancestors;
+    }
+
+    private List<Paloma> ancestorsFromClosure(Paloma paloma, PedigreeClosure closure, int maxGenerations, Set<String> palomarIds) throws ExecutionException, InterruptedException {
+        List<String> ids = new ArrayList<>();
+        Map<String, Integer> external = new LinkedHashMap<>();
+        Set<String> visited = new HashSet<>(closure.getAncestros());
+        if (paloma.getAnillo() != null) {
+            visited.add(paloma.getAnillo());
+        }
+        for (int i = 0; i < closure.getAncestros().size(); i++) {
+            int depth = closure.getProfundidades().get(i);
+            if (depth > maxGenerations) {
+                break;
+            }
+            String ancestorId = closure.getAncestroIds().get(i);
+            if (ancestorId != null) {
+                ids.add(ancestorId);
+            } else {
+                external.put(closure.getAncestros().get(i), depth);
+            }
+        }
 
+        List<Paloma> ancestors = new ArrayList<>(palomaRepository.findAllByIds(ids));
+        if (!external.isEmpty()) {
+            ancestors.addAll(fetchAncestors(external, maxGenerations, visited, paloma.getPalomarId(), palomarIds));
+        }
         return ancestors;
     }
 
-    private void collectAncestors(Paloma paloma, List<Paloma> ancestors, java.util.Set<String> visited) throws ExecutionException, InterruptedException {
-        // Add father if exists and not already visited
-        if (paloma.getPadre() != null && !visited.contains(paloma.getPadre())) {
-            visited.add(paloma.getPadre());
-            Optional<Paloma> fatherOpt = findByAnillo(paloma.getPadre());
-            if (fatherOpt.isPresent()) {
-                Paloma father = fatherOpt.get();
-                ancestors.add(father);
-                // Recursively collect father's ancestors
-                collectAncestors(father, ancestors, visited);
+    // Walks the pedigree one generation at a time starting from rings already marked as
+    // visited; each generation's parents are fetched together with batched whereIn queries
+    private List<Paloma> fetchAncestors(Map<String, Integer> startAnillos, int maxGenerations,
+                                        Set<String> visited, String preferredPalomarId, Set<String> palomarIds) throws ExecutionException, InterruptedException {
+        List<Paloma> ancestors = new ArrayList<>();
+        TreeMap<Integer, Set<String>> pending = new TreeMap<>();
+        startAnillos.forEach((anillo, generation) ->
+                pending.computeIfAbsent(generation, g -> new LinkedHashSet<>()).add(anillo));
+
+        while (!pending.isEmpty()) {
+            Map.Entry<Integer, Set<String>> level = pending.pollFirstEntry();
+            int generation = level.getKey();
+            Set<String> anillos = level.getValue();
+            Map<String, Paloma> found = findByAnillos(anillos, preferredPalomarId, palomarIds);
+            for (String anillo : anillos) {
+                Paloma ancestor = found.get(anillo);
+                if (ancestor == null) {
+                    continue;
+                }
+                ancestors.add(ancestor);
+                if (generation >= maxGenerations) {
+                    continue;
+                }
+                // The visited set protects against cycles in the pedigree
+                for (String parent : new String[]{ancestor.getPadre(), ancestor.getMadre()}) {
+                    if (hasText(parent) && visited.add(parent)) {
+                        pending.computeIfAbsent(generation + 1, g -> new LinkedHashSet<>()).add(parent);
+                    }
+                }
             }
         }
+        return ancestors;
+    }
+
+    // Nearest common ancestors of two birds. Both pedigrees are expanded together, one
+    // generation per step, with the parents of both frontiers resolved in a single batched
+    // lookup. A ring reached from both sides is a common ancestor and is not expanded further,
+    // and the walk stops as soon as both frontiers are exhausted
+    public List<CommonAncestor> getCommonAncestors(String palomaIdA, String palomaIdB, int maxGenerations) throws ExecutionException, InterruptedException {
+        Optional<Paloma> palomaA = findById(palomaIdA);
+        Optional<Paloma> palomaB = findById(palomaIdB);
+        if (palomaA.isEmpty() || palomaB.isEmpty()) {
+            return List.of();
+        }
+        return getCommonAncestors(palomaA.get(), palomaB.get(), maxGenerations, null);
+    }
+
+    // palomarIds limits the palomares ancestors may be resolved in; null allows any
+    public List<CommonAncestor> getCommonAncestors(Paloma palomaA, Paloma palomaB, int maxGenerations, Set<String> palomarIds) throws ExecutionException, InterruptedException {
+        if (!hasText(palomaA.getAnillo()) || !hasText(palomaB.getAnillo())) {
+            return List.of();
+        }
+
+        String preferredPalomarId = palomaA.getPalomarId();
+        Map<String, Integer> generationsA = new HashMap<>();
+        Map<String, Integer> generationsB = new HashMap<>();
+        Map<String, Paloma> resolved = new HashMap<>();
+        generationsA.put(palomaA.getAnillo(), 0);
+        generationsB.put(palomaB.getAnillo(), 0);
+        resolved.put(palomaA.getAnillo(), palomaA);
+        resolved.put(palomaB.getAnillo(), palomaB);
+
+        List<CommonAncestor> common = new ArrayList<>();
+        Set<String> frontierA = parentAnillos(palomaA);
+        Set<String> frontierB = parentAnillos(palomaB);
+        // One bird may be an ancestor of the other
+        addIfCommon(palomaA.getAnillo(), generationsA, generationsB, resolved, common);
+        addIfCommon(palomaB.getAnillo(), generationsA, generationsB, resolved, common);
 
-        // Add mother if exists and not already visited
-        if (paloma.getMadre() != null && !visited.contains(paloma.getMadre())) {
-            visited.add(paloma.getMadre());
-            Optional<Paloma> motherOpt = findByAnillo(paloma.getMadre());
-            if (motherOpt.isPresent()) {
-                Paloma mother = motherOpt.get();
-                ancestors.add(mother);
-                // Recursively collect mother's ancestors
-                collectAncestors(mother, ancestors, visited);
+        for (int generation = 1; generation <= maxGenerations && (!frontierA.isEmpty() || !frontierB.isEmpty()); generation++) {
+            Set<String> reachedA = reach(frontierA, generation, generationsA);
+            Set<String> reachedB = reach(frontierB, generation, generationsB);
+
+            Set<String> missing = new LinkedHashSet<>();
+            reachedA.stream().filter(anillo -> !resolved.containsKey(anillo)).forEach(missing::add);
+            reachedB.stream().filter(anillo -> !resolved.containsKey(anillo)).forEach(missing::add);
+            resolved.putAll(findByAnillos(missing, preferredPalomarId, palomarIds));
+
+            Set<String> met = new HashSet<>();
+            for (String anillo : reachedA) {
+                if (addIfCommon(anillo, generationsA, generationsB, resolved, common)) {
+                    met.add(anillo);
+                }
+            }
+            for (String anillo : reachedB) {
+                if (!met.contains(anillo) && addIfCommon(anillo, generationsA, generationsB, resolved, common)) {
+                    met.add(anillo);
+                }
             }
+
+            frontierA = nextFrontier(reachedA, met, resolved, generationsA);
+            frontierB = nextFrontier(reachedB, met, resolved, generationsB);
         }
+
+        common.sort(Comparator.comparingInt((CommonAncestor c) -> c.generationsA() + c.generationsB()));
+        return common;
+    }
+
+    private static Set<String> parentAnillos(Paloma paloma) {
+        Set<String> parents = new LinkedHashSet<>();
+        if (hasText(paloma.getPadre())) {
+            parents.add(paloma.getPadre());
+        }
+        if (hasText(paloma.getMadre())) {
+            parents.add(paloma.getMadre());
+        }
+        return parents;
+    }
+
+    // Rings of the frontier seen for the first time on this side
+    private static Set<String> reach(Set<String> frontier, int generation, Map<String, Integer> generations) {
+        Set<String> reached = new LinkedHashSet<>();
+        for (String anillo : frontier) {
+            if (generations.putIfAbsent(anillo, generation) == null) {
+                reached.add(anillo);
+            }
+        }
+        return reached;
+    }
+
+    private static boolean addIfCommon(String anillo, Map<String, Integer> generationsA, Map<String, Integer> generationsB,
+                                       Map<String, Paloma> resolved, List<CommonAncestor> common) {
+        Integer a = generationsA.get(anillo);
+        Integer b = generationsB.get(anillo);
+        if (a == null || b == null || (a == 0 && b == 0)) {
+            return false;
+        }
+        Paloma paloma = resolved.get(anillo);
+        if (paloma != null) {
+            common.add(new CommonAncestor(paloma, a, b));
+        }
+        return true;
+    }
+
+    private static Set<String> nextFrontier(Set<String> reached, Set<String> met, Map<String, Paloma> resolved, Map<String, Integer> generations) {
+        Set<String> next = new LinkedHashSet<>();
+        for (String anillo : reached) {
+            Paloma paloma = resolved.get(anillo);
+            if (met.contains(anillo) || paloma == null) {
+                continue;
+            }
+            for (String parent : parentAnillos(paloma)) {
+                if (!generations.containsKey(parent)) {
+                    next.add(parent);
+                }
+            }
+        }
+        return next;
+    }
+
+    // Resolves many rings in batched queries; when a ring exists in several palomares the
+    // one in preferredPalomarId wins
+    public Map<String, Paloma> findByAnillos(Collection<String> anillos, String preferredPalomarId) throws ExecutionException, InterruptedException {
+        return findByAnillos(anillos, preferredPalomarId, null);
+    }
+
+    // Same, ignoring palomas outside palomarIds unless it is null
+    public Map<String, Paloma> findByAnillos(Collection<String> anillos, String preferredPalomarId, Set<String> palomarIds) throws ExecutionException, InterruptedException {
+        Map<String, Paloma> byAnillo = new HashMap<>();
+        if (anillos.isEmpty()) {
+            return byAnillo;
+        }
+        for (Paloma paloma : palomaRepository.findByAnillosAsync(anillos).get()) {
+            if (palomarIds != null && !palomarIds.contains(paloma.getPalomarId())) {
+                continue;
+            }
+            Paloma current = byAnillo.get(paloma.getAnillo());
+            if (current == null || (!Objects.equals(current.getPalomarId(), preferredPalomarId)
+                    && Objects.equals(paloma.getPalomarId(), preferredPalomarId))) {
+                byAnillo.put(paloma.getAnillo(), paloma);
+            }
+        }
+        return byAnillo;
+    }
+
+    private static boolean hasText(String value) {
+        return value != null && !value.isEmpty();
     }
 
     public List<Paloma> getDescendants(String palomaId) throws ExecutionException, InterruptedException {
         Optional<Paloma> palomaOpt = findById(palomaId);
-        if (palomaOpt.isEmpty()) {
-            return List.of();
+        return palomaOpt.isPresent() ? getDescendants(palomaOpt.get()) : List.of();
+    }
+
+    public List<Paloma> getDescendants(Paloma paloma) throws ExecutionException, InterruptedException {
+        if (paloma.getPalomarId() != null) {
+            List<String> childIds = pedigreeIndexService.getGraph(paloma.getPalomarId()).childIds(paloma.getId());
+            if (childIds != null) {
+                return palomaRepository.findAllByIds(childIds);
+            }
         }
 
-        Paloma paloma = palomaOpt.get();
         String anillo = paloma.getAnillo();
 
-        List<Paloma> descendants = new java.util.ArrayList<>();
+        // Rings are not unique across palomares, so matches from other palomares are dropped
+        List<Paloma> descendants = new ArrayList<>();
         descendants.addAll(findByPadre(anillo));
         descendants.addAll(findByMadre(anillo));
+        descendants.removeIf(child -> !Objects.equals(child.getPalomarId(), paloma.getPalomarId()));
 
         return descendants;
     }
-}
\ No newline at end of file
+
+    // Progeny tree down to maxDepth generations, scoped to the bird's palomar. Once the palomar's
+    // closure is built this is one array-contains query on pedigree_closure; otherwise each
+    // generation is expanded at once: whereIn chunks on padre and on madre run concurrently.
+    // A bird whose two parents are both in the tree is placed once, under the first parent reached
+    public DescendantTree getDescendantTree(String palomaId, int maxDepth) throws ExecutionException, InterruptedException {
+        Optional<Paloma> palomaOpt = findById(palomaId);
+        return palomaOpt.isPresent() ? getDescendantTree(palomaOpt.get(), maxDepth) : new DescendantTree(List.of(), false);
+    }
+
+    public DescendantTree getDescendantTree(Paloma root, int maxDepth) throws ExecutionException, InterruptedException {
+        if (!hasText(root.getAnillo())) {
+            return new DescendantTree(List.of(), false);
+        }
+        if (root.getPalomarId() != null && maxDepth <= pedigreeClosureService.getMaxDepth()
+                && pedigreeClosureService.isBuilt(root.getPalomarId())) {
+            return descendantTreeFromClosure(root, maxDepth);
+        }
+
+        Map<String, List<Paloma>> childrenByAnillo = new HashMap<>();
+        Set<String> visited = new HashSet<>();
+        visited.add(root.getAnillo());
+        List<String> frontier = List.of(root.getAnillo());
+        int nodes = 0;
+        boolean truncated = false;
+
+        for (int generation = 1; generation <= maxDepth && !frontier.isEmpty() && !truncated; generation++) {
+            CompletableFuture<List<Paloma>> byPadre = palomaRepository.findByFieldInAsync("padre", frontier, root.getPalomarId());
+            CompletableFuture<List<Paloma>> byMadre = palomaRepository.findByFieldInAsync("madre", frontier, root.getPalomarId());
+            CompletableFuture.allOf(byPadre, byMadre).get();
+
+            List<String> next = new ArrayList<>();
+            for (boolean padre : new boolean[]{true, false}) {
+                for (Paloma child : (padre ? byPadre : byMadre).join()) {
+                    // The visited set protects against cycles and birds reached through both parents
+                    if (!hasText(child.getAnillo()) || visited.contains(child.getAnillo())) {
+                        continue;
+                    }
+                    if (nodes >= maxDescendantNodes) {
+                        truncated = true;
+                        continue;
+                    }
+                    visited.add(child.getAnillo());
+                    String parent = padre ? child.getPadre() : child.getMadre();
+                    childrenByAnillo.computeIfAbsent(parent, p -> new ArrayList<>()).add(child);
+                    next.add(child.getAnillo());
+                    nodes++;
+                }
+            }
+            frontier = next;
+        }
+
+        return new DescendantTree(buildDescendantNodes(root.getAnillo(), 1, childrenByAnillo), truncated);
+    }
+
+    private DescendantTree descendantTreeFromClosure(Paloma root, int maxDepth) throws ExecutionException, InterruptedException {
+        String anillo = root.getAnillo();
+        List<PedigreeClosure> inRange = pedigreeClosureService.findDescendants(root.getPalomarId(), anillo).stream()
+                .filter(closure -> closure.profundidadDe(anillo) <= maxDepth)
+                .sorted(Comparator.comparingInt((PedigreeClosure closure) -> closure.profundidadDe(anillo)))
+                .toList();
+        boolean truncated = inRange.size() > maxDescendantNodes;
+        List<PedigreeClosure> closures = truncated ? inRange.subList(0, maxDescendantNodes) : inRange;
+
+        Map<String, Integer> depthByAnillo = new HashMap<>();
+        depthByAnillo.put(anillo, 0);
+        closures.forEach(closure -> depthByAnillo.put(closure.getAnillo(), closure.profundidadDe(anillo)));
+
+        Map<String, List<Paloma>> childrenByAnillo = new HashMap<>();
+        List<Paloma> descendants = palomaRepository.findAllByIds(closures.stream().map(PedigreeClosure::getId).toList());
+        for (Paloma child : descendants) {
+            Integer depth = depthByAnillo.get(child.getAnillo());
+            if (depth == null) {
+                continue;
+            }
+            // Hang the bird under the parent one generation above it, padre first
+            String parent = Objects.equals(depthByAnillo.get(child.getPadre()), depth - 1) ? child.getPadre() : child.getMadre();
+            childrenByAnillo.computeIfAbsent(parent, p -> new ArrayList<>()).add(child);
+        }
+        return new DescendantTree(buildDescendantNodes(anillo, 1, childrenByAnillo), truncated);
+    }
+
+    private static List<DescendantNode> buildDescendantNodes(String anillo, int generation, Map<String, List<Paloma>> childrenByAnillo) {
+        List<Paloma> children = childrenByAnillo.getOrDefault(anillo, List.of());
+        List<DescendantNode> nodes = new ArrayList<>(children.size());
+        for (Paloma child : children) {
+            nodes.add(new DescendantNode(child, generation,
+                    buildDescendantNodes(child.getAnillo(), generation + 1, childrenByAnillo)));
+        }
+        return nodes;
+    }
+}
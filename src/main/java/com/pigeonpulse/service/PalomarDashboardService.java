@@ -0,0 +1,185 @@
+package com.pigeonpulse.service;
+
+import com.pigeonpulse.model.Palomar;
+import com.pigeonpulse.model.UsuarioPalomar;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Statistics of every palomar a user can access, fetched concurrently in one request
+@Service
+public class PalomarDashboardService {
+
+    // SIN_INICIALIZAR: the loft's counters are still being computed in the background
+    public enum Estado { OK, SIN_INICIALIZAR, TIEMPO_AGOTADO, ERROR }
+
+    // estadisticas is null unless estado is OK
+    public record Loft(String palomarId, String nombre, String rol, Estado estado, PalomarStatsService.Estadisticas estadisticas) {}
+
+    // combinado only sums the lofts that answered; completo is false if any of them did not
+    public record Dashboard(List<Loft> palomares, PalomarStatsService.Estadisticas combinado, boolean completo) {}
+
+    @Autowired
+    private UsuarioPalomarService usuarioPalomarService;
+
+    @Autowired
+    private PalomarService palomarService;
+
+    @Autowired
+    private PalomarStatsService palomarStatsService;
+
+    @Value("${dashboard.max-concurrent:8}")
+    private int maxConcurrent;
+
+    @Value("${dashboard.loft-timeout:3s}")
+    private Duration loftTimeout;
+
+    private ExecutorService executor;
+
+    // Palomares with a background reconcile in progress
+    private final Set<String> reconciling = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    void init() {
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public Dashboard getDashboard(String usuarioId) throws ExecutionException, InterruptedException {
+        Map<String, String> rolByPalomar = new LinkedHashMap<>();
+        for (UsuarioPalomar relacion : usuarioPalomarService.findByUsuarioId(usuarioId)) {
+            if (relacion.getPalomarId() != null) {
+                rolByPalomar.putIfAbsent(relacion.getPalomarId(), relacion.getRol());
+            }
+        }
+        if (rolByPalomar.isEmpty()) {
+            return new Dashboard(List.of(), combine(List.of()), true);
+        }
+
+        // Names in one batched read while the statistics are being fetched
+        CompletableFuture<Map<String, Palomar>> palomares = CompletableFuture.supplyAsync(() -> {
+            try {
+                return palomarService.findAllByIds(rolByPalomar.keySet()).stream()
+                        .collect(Collectors.toMap(Palomar::getId, Function.identity(), (a, b) -> a));
+            } catch (ExecutionException | InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }, executor);
+
+        // The permit bounds how many lofts are read at once; the timeout only starts once a
+        // loft holds one, so lofts queued behind slow ones are not penalized
+        Semaphore permits = new Semaphore(maxConcurrent);
+        Map<String, Future<Loft>> pending = new LinkedHashMap<>();
+        rolByPalomar.forEach((palomarId, rol) ->
+                pending.put(palomarId, executor.submit(() -> loadLoft(palomarId, rol, permits))));
+
+        Map<String, Palomar> byId;
+        try {
+            byId = palomares.get();
+        } catch (ExecutionException e) {
+            System.out.println("PalomarDashboardService: Could not read palomar names: " + e.getCause().getMessage());
+            byId = Map.of();
+        }
+
+        List<Loft> lofts = new ArrayList<>();
+        for (Map.Entry<String, Future<Loft>> entry : pending.entrySet()) {
+            Loft loft;
+            try {
+                loft = entry.getValue().get();
+            } catch (ExecutionException e) {
+                loft = new Loft(entry.getKey(), null, rolByPalomar.get(entry.getKey()), Estado.ERROR, null);
+            }
+            Palomar palomar = byId.get(loft.palomarId());
+            lofts.add(new Loft(loft.palomarId(), palomar != null ? palomar.getDisplayName() : null, loft.rol(), loft.estado(), loft.estadisticas()));
+        }
+
+        List<PalomarStatsService.Estadisticas> answered = lofts.stream()
+                .filter(loft -> loft.estado() == Estado.OK)
+                .map(Loft::estadisticas)
+                .toList();
+        return new Dashboard(lofts, combine(answered), answered.size() == lofts.size());
+    }
+
+    // Only the stored counters are read here, so a timed out read can be cancelled safely. A loft
+    // whose counters were never computed is reconciled in the background, never interrupted
+    private Loft loadLoft(String palomarId, String rol, Semaphore permits) throws InterruptedException {
+        permits.acquire();
+        Future<Optional<PalomarStatsService.Estadisticas>> work = executor.submit(() -> palomarStatsService.findInitialized(palomarId));
+        try {
+            Optional<PalomarStatsService.Estadisticas> estadisticas = work.get(loftTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            if (estadisticas.isEmpty()) {
+                reconcileInBackground(palomarId);
+                return new Loft(palomarId, null, rol, Estado.SIN_INICIALIZAR, null);
+            }
+            return new Loft(palomarId, null, rol, Estado.OK, estadisticas.get());
+        } catch (TimeoutException e) {
+            work.cancel(true);
+            System.out.println("PalomarDashboardService: Timed out reading palomar " + palomarId);
+            return new Loft(palomarId, null, rol, Estado.TIEMPO_AGOTADO, null);
+        } catch (ExecutionException e) {
+            System.out.println("PalomarDashboardService: Error reading palomar " + palomarId + ": " + e.getCause().getMessage());
+            return new Loft(palomarId, null, rol, Estado.ERROR, null);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void reconcileInBackground(String palomarId) {
+        if (!reconciling.add(palomarId)) {
+            return;
+        }
+        executor.submit(() -> {
+            try {
+                palomarStatsService.reconcile(palomarId);
+            } catch (ExecutionException | InterruptedException | RuntimeException e) {
+                System.out.println("PalomarDashboardService: Error reconciling palomar " + palomarId + ": " + e.getMessage());
+            } finally {
+                reconciling.remove(palomarId);
+            }
+        });
+    }
+
+    private static PalomarStatsService.Estadisticas combine(List<PalomarStatsService.Estadisticas> estadisticas) {
+        long total = 0;
+        long enCarrera = 0;
+        long reproductoras = 0;
+        long otras = 0;
+        Map<String, Long> porLinea = new HashMap<>();
+        Map<String, Long> porSexo = new HashMap<>();
+        for (PalomarStatsService.Estadisticas e : estadisticas) {
+            total += e.totalPalomas();
+            enCarrera += e.palomasEnCarrera();
+            reproductoras += e.palomasReproductoras();
+            otras += e.palomasOtras();
+            e.palomasPorLinea().forEach((linea, count) -> porLinea.merge(linea, count, Long::sum));
+            e.palomasPorSexo().forEach((sexo, count) -> porSexo.merge(sexo, count, Long::sum));
+        }
+        return new PalomarStatsService.Estadisticas(total, enCarrera, reproductoras, otras, porLinea, porSexo);
+    }
+}
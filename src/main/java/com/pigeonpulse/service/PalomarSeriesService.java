@@ -0,0 +1,335 @@
+package com.pigeonpulse.service;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.pigeonpulse.event.PalomaChangedEvent;
+import com.pigeonpulse.model.Paloma;
+import com.pigeonpulse.model.Palomar;
+import com.pigeonpulse.repository.EntityQuery;
+import com.pigeonpulse.repository.Page;
+import com.pigeonpulse.repository.PalomaRepository;
+import com.pigeonpulse.repository.PalomarRepository;
+import com.pigeonpulse.repository.PalomarSeriesRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+// Population of a palomar over time: palomas registered per month and year (fechaRegistro) and
+// palomas per birth year (año), each split by estado and sexo. Counters live in bucketed
+// documents (one per registration year, one for all birth years) updated on every paloma write,
+// so a ten year chart is a single getAll of about ten small documents
+@Service
+public class PalomarSeriesService {
+
+    public enum Granularidad { MES, AÑO }
+
+    public record Punto(String periodo, long total, Map<String, Long> porEstado, Map<String, Long> porSexo) {}
+
+    private static final String TOTAL = "total";
+    private static final String POR_ESTADO = "porEstado";
+    private static final String POR_SEXO = "porSexo";
+    private static final String MESES = "meses";
+    private static final String AÑOS = "años";
+    private static final String VERSION = "version";
+
+    private static final int REBUILD_ATTEMPTS = 3;
+
+    @Autowired
+    private PalomarSeriesRepository palomarSeriesRepository;
+
+    @Autowired
+    private PalomaRepository palomaRepository;
+
+    @Autowired
+    private PalomarRepository palomarRepository;
+
+    @Value("${series.time-zone:UTC}")
+    private ZoneId zone;
+
+    @Value("${series.rebuild.page-size:1000}")
+    private int pageSize;
+
+    // Lazy rebuilds in progress, so concurrent first reads of a palomar share one rebuild
+    private final Map<String, CompletableFuture<Void>> rebuilding = new ConcurrentHashMap<>();
+
+    // One point per month or year between desde and hasta (inclusive), empty periods included
+    public List<Punto> getRegistro(String palomarId, Granularidad granularidad, int desde, int hasta) throws ExecutionException, InterruptedException {
+        List<String> ids = new ArrayList<>();
+        for (int year = desde; year <= hasta; year++) {
+            ids.add(registroId(palomarId, year));
+        }
+        Map<String, DocumentSnapshot> documents = read(palomarId, ids);
+
+        List<Punto> puntos = new ArrayList<>();
+        for (int year = desde; year <= hasta; year++) {
+            DocumentSnapshot document = documents.get(registroId(palomarId, year));
+            Map<String, Object> counters = document != null && document.exists() ? document.getData() : Map.of();
+            if (granularidad == Granularidad.AÑO) {
+                puntos.add(punto(String.valueOf(year), counters));
+                continue;
+            }
+            Map<String, Object> meses = child(counters, MESES);
+            for (int month = 1; month <= 12; month++) {
+                String mes = String.format("%02d", month);
+                puntos.add(punto(year + "-" + mes, child(meses, mes)));
+            }
+        }
+        return puntos;
+    }
+
+    public List<Punto> getNacimiento(String palomarId, int desde, int hasta) throws ExecutionException, InterruptedException {
+        String id = nacimientoId(palomarId);
+        DocumentSnapshot document = read(palomarId, List.of(id)).get(id);
+        Map<String, Object> años = document != null && document.exists() ? child(document.getData(), AÑOS) : Map.of();
+
+        List<Punto> puntos = new ArrayList<>();
+        for (int year = desde; year <= hasta; year++) {
+            puntos.add(punto(String.valueOf(year), child(años, String.valueOf(year))));
+        }
+        return puntos;
+    }
+
+    // The paloma is already saved, so a failure here must not fail the request or stop later
+    // listeners: the palomares involved are marked for a rebuild on their next read instead
+    @EventListener
+    public void onPalomaChanged(PalomaChangedEvent event) {
+        try {
+            applyChange(event);
+        } catch (ExecutionException | InterruptedException | RuntimeException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            System.out.println("PalomarSeriesService: Error updating series for paloma " + event.palomaId() + ": " + e.getMessage());
+            Set<String> palomarIds = new LinkedHashSet<>();
+            if (event.before() != null && event.before().getPalomarId() != null) {
+                palomarIds.add(event.before().getPalomarId());
+            }
+            if (event.after() != null && event.after().getPalomarId() != null) {
+                palomarIds.add(event.after().getPalomarId());
+            }
+            palomarIds.forEach(this::markStale);
+        }
+    }
+
+    private void applyChange(PalomaChangedEvent event) throws ExecutionException, InterruptedException {
+        Paloma before = event.before();
+        Paloma after = event.after();
+        if (before != null && after != null && !changesSeries(before, after)) {
+            return;
+        }
+        // A paloma that moves between palomares is removed from one and added to the other
+        Map<String, Map<String, Map<List<String>, Long>>> deltasByPalomar = new HashMap<>();
+        if (before != null && before.getPalomarId() != null) {
+            addCounters(before, -1, deltasByPalomar.computeIfAbsent(before.getPalomarId(), id -> new HashMap<>()));
+        }
+        if (after != null && after.getPalomarId() != null) {
+            addCounters(after, 1, deltasByPalomar.computeIfAbsent(after.getPalomarId(), id -> new HashMap<>()));
+        }
+        for (Map.Entry<String, Map<String, Map<List<String>, Long>>> entry : deltasByPalomar.entrySet()) {
+            entry.getValue().values().forEach(deltas -> deltas.values().removeIf(delta -> delta == 0));
+            entry.getValue().values().removeIf(Map::isEmpty);
+            if (!entry.getValue().isEmpty()) {
+                // Tells a rebuild running at the same time that its scan may have missed this write
+                entry.getValue().computeIfAbsent(metaId(entry.getKey()), id -> new HashMap<>()).put(List.of(VERSION), 1L);
+                palomarSeriesRepository.increment(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    // Recomputes every series document of the palomar from scratch. A blind write would drop
+    // increments applied while the palomas were being scanned, so the result is only stored if
+    // the version on the meta document did not move; otherwise the scan runs again
+    public void rebuild(String palomarId) throws ExecutionException, InterruptedException {
+        for (int attempt = 1; attempt <= REBUILD_ATTEMPTS; attempt++) {
+            long version = palomarSeriesRepository.getVersion(metaId(palomarId));
+            if (rebuild(palomarId, version)) {
+                return;
+            }
+        }
+        System.out.println("PalomarSeriesService: Palomar " + palomarId + " kept changing during rebuild, series left as they were");
+    }
+
+    private boolean rebuild(String palomarId, long version) throws ExecutionException, InterruptedException {
+        Map<String, Map<List<String>, Long>> counters = new HashMap<>();
+        counters.put(metaId(palomarId), new HashMap<>());
+
+        // One scan on the single-field palomarId index; palomas stored without fechaRegistro are
+        // read back with none and only count towards their birth year
+        scan(EntityQuery.create()
+                .whereEqualTo("palomarId", palomarId)
+                .select("palomarId", "estado", "sexo", "año", "fechaRegistro"),
+            paloma -> addCounters(paloma, 1, counters));
+
+        return palomarSeriesRepository.replaceAllIfUnchanged(palomarId, metaId(palomarId), version, counters);
+    }
+
+    // Disabled unless series.rebuild.cron is set; corrects any drift in the counters
+    @Scheduled(cron = "${series.rebuild.cron:-}")
+    public void rebuildAll() throws ExecutionException, InterruptedException {
+        int palomares = 0;
+        for (Palomar palomar : palomarRepository.findAll()) {
+            rebuild(palomar.getId());
+            palomares++;
+        }
+        System.out.println("PalomarSeriesService: Rebuilt series of " + palomares + " palomares");
+    }
+
+    // Reads the documents together with the palomar marker, building the series on first use
+    private Map<String, DocumentSnapshot> read(String palomarId, List<String> ids) throws ExecutionException, InterruptedException {
+        List<String> withMeta = new ArrayList<>(ids);
+        withMeta.add(metaId(palomarId));
+        List<DocumentSnapshot> documents = palomarSeriesRepository.findAll(withMeta);
+        if (!initialized(documents.get(documents.size() - 1))) {
+            rebuildOnce(palomarId);
+            documents = palomarSeriesRepository.findAll(withMeta);
+            if (!initialized(documents.get(documents.size() - 1))) {
+                // Partial counters would be wrong, not just stale
+                throw new IllegalStateException("Series of palomar " + palomarId + " could not be computed");
+            }
+        }
+        Map<String, DocumentSnapshot> byId = new HashMap<>();
+        documents.forEach(document -> byId.put(document.getId(), document));
+        return byId;
+    }
+
+    private void rebuildOnce(String palomarId) throws ExecutionException, InterruptedException {
+        CompletableFuture<Void> mine = new CompletableFuture<>();
+        CompletableFuture<Void> running = rebuilding.putIfAbsent(palomarId, mine);
+        if (running != null) {
+            running.get();
+            return;
+        }
+        try {
+            rebuild(palomarId);
+            mine.complete(null);
+        } catch (ExecutionException | InterruptedException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            rebuilding.remove(palomarId, mine);
+        }
+    }
+
+    private void markStale(String palomarId) {
+        try {
+            palomarSeriesRepository.markStale(palomarId, metaId(palomarId));
+        } catch (ExecutionException | InterruptedException | RuntimeException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            System.out.println("PalomarSeriesService: Could not mark palomar " + palomarId + " for rebuild: " + e.getMessage());
+        }
+    }
+
+    private static boolean initialized(DocumentSnapshot meta) {
+        return meta.exists() && Boolean.TRUE.equals(meta.getBoolean("inicializado"));
+    }
+
+    private void scan(EntityQuery query, Consumer<Paloma> consumer) throws ExecutionException, InterruptedException {
+        String cursor = null;
+        do {
+            Page<Paloma> page = palomaRepository.findPage(query, cursor, pageSize);
+            page.items().forEach(consumer);
+            cursor = page.nextCursor();
+        } while (cursor != null);
+    }
+
+    private void addCounters(Paloma paloma, long delta, Map<String, Map<List<String>, Long>> counters) {
+        addNacimiento(paloma, delta, counters);
+        addRegistro(paloma, delta, counters);
+    }
+
+    private void addRegistro(Paloma paloma, long delta, Map<String, Map<List<String>, Long>> counters) {
+        Timestamp fecha = paloma.getFechaRegistroTimestamp();
+        if (fecha == null) {
+            return;
+        }
+        ZonedDateTime date = fecha.toDate().toInstant().atZone(zone);
+        Map<List<String>, Long> document = counters.computeIfAbsent(registroId(paloma.getPalomarId(), date.getYear()), id -> new HashMap<>());
+        addBucket(document, List.of(), paloma, delta);
+        addBucket(document, List.of(MESES, String.format("%02d", date.getMonthValue())), paloma, delta);
+    }
+
+    private static void addNacimiento(Paloma paloma, long delta, Map<String, Map<List<String>, Long>> counters) {
+        if (paloma.getAño() == null) {
+            return;
+        }
+        Map<List<String>, Long> document = counters.computeIfAbsent(nacimientoId(paloma.getPalomarId()), id -> new HashMap<>());
+        addBucket(document, List.of(AÑOS, paloma.getAño().toString()), paloma, delta);
+    }
+
+    private static void addBucket(Map<List<String>, Long> document, List<String> bucket, Paloma paloma, long delta) {
+        document.merge(path(bucket, TOTAL), delta, Long::sum);
+        if (paloma.getEstado() != null && !paloma.getEstado().isEmpty()) {
+            document.merge(path(bucket, POR_ESTADO, paloma.getEstado()), delta, Long::sum);
+        }
+        if (paloma.getSexo() != null && !paloma.getSexo().isEmpty()) {
+            document.merge(path(bucket, POR_SEXO, paloma.getSexo()), delta, Long::sum);
+        }
+    }
+
+    private static List<String> path(List<String> bucket, String... fields) {
+        List<String> path = new ArrayList<>(bucket);
+        path.addAll(List.of(fields));
+        return path;
+    }
+
+    private static boolean changesSeries(Paloma before, Paloma after) {
+        return !Objects.equals(before.getPalomarId(), after.getPalomarId())
+                || !Objects.equals(before.getEstado(), after.getEstado())
+                || !Objects.equals(before.getSexo(), after.getSexo())
+                || !Objects.equals(before.getAño(), after.getAño())
+                || !Objects.equals(before.getFechaRegistroTimestamp(), after.getFechaRegistroTimestamp());
+    }
+
+    private static Punto punto(String periodo, Map<String, Object> bucket) {
+        Object total = bucket.get(TOTAL);
+        return new Punto(periodo, total instanceof Number n ? n.longValue() : 0L, counts(child(bucket, POR_ESTADO)), counts(child(bucket, POR_SEXO)));
+    }
+
+    // Values that dropped to zero are left out
+    private static Map<String, Long> counts(Map<String, Object> map) {
+        Map<String, Long> result = new LinkedHashMap<>();
+        map.forEach((value, count) -> {
+            if (count instanceof Number number && number.longValue() > 0) {
+                result.put(value, number.longValue());
+            }
+        });
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> child(Map<String, Object> map, String key) {
+        Object value = map != null ? map.get(key) : null;
+        return value instanceof Map<?, ?> child ? (Map<String, Object>) child : Map.of();
+    }
+
+    private static String metaId(String palomarId) {
+        return palomarId + "_meta";
+    }
+
+    private static String registroId(String palomarId, int year) {
+        return palomarId + "_registro_" + year;
+    }
+
+    private static String nacimientoId(String palomarId) {
+        return palomarId + "_nacimiento";
+    }
+}
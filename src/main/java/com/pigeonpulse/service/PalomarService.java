@@ -1,13 +1,17 @@
 package com.pigeonpulse.service;
 
+import com.pigeonpulse.event.PalomarChangedEvent;
 import com.pigeonpulse.model.Palomar;
 import com.pigeonpulse.model.Usuario;
 import com.pigeonpulse.repository.PalomarRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
 @Service
@@ -16,10 +20,21 @@ public class PalomarService {
     @Autowired
     private PalomarRepository palomarRepository;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     public Optional<Palomar> findById(String id) throws ExecutionException, InterruptedException {
         return palomarRepository.findById(id);
     }
 
+    public CompletableFuture<Optional<Palomar>> findByIdAsync(String id) {
+        return palomarRepository.findByIdAsync(id);
+    }
+
+    public List<Palomar> findAllByIds(Collection<String> ids) throws ExecutionException, InterruptedException {
+        return palomarRepository.findAllByIds(ids);
+    }
+
     public List<Palomar> findByPropietarioId(String propietarioId) throws ExecutionException, InterruptedException {
         return palomarRepository.findByPropietarioIdList(propietarioId);
     }
@@ -30,10 +45,12 @@ public class PalomarService {
 
     public void update(String id, Palomar palomar) throws ExecutionException, InterruptedException {
         palomarRepository.update(id, palomar);
+        eventPublisher.publishEvent(new PalomarChangedEvent(id));
     }
 
     public void deleteById(String id) throws ExecutionException, InterruptedException {
         palomarRepository.deleteById(id);
+        eventPublisher.publishEvent(new PalomarChangedEvent(id));
     }
 
     // Crear palomar por defecto para un usuario
@@ -0,0 +1,251 @@
+package com.pigeonpulse.service;
+
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.pigeonpulse.event.PalomaChangedEvent;
+import com.pigeonpulse.model.Paloma;
+import com.pigeonpulse.model.Palomar;
+import com.pigeonpulse.repository.EntityQuery;
+import com.pigeonpulse.repository.Page;
+import com.pigeonpulse.repository.PalomaRepository;
+import com.pigeonpulse.repository.PalomarRepository;
+import com.pigeonpulse.repository.PalomarStatsRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+// Loft statistics kept as counters in palomar_estadisticas, updated on every paloma write,
+// so the dashboard costs one point read instead of loading every paloma
+@Service
+public class PalomarStatsService {
+
+    private static final String POR_ESTADO = "porEstado";
+    private static final String POR_SEXO = "porSexo";
+    private static final String POR_LINEA = "porLinea";
+    private static final String POR_AÑO = "porAño";
+
+    private static final int RECONCILE_ATTEMPTS = 3;
+
+    @Autowired
+    private PalomarStatsRepository palomarStatsRepository;
+
+    @Autowired
+    private PalomaRepository palomaRepository;
+
+    @Autowired
+    private PalomarRepository palomarRepository;
+
+    @Value("${stats.reconcile.page-size:1000}")
+    private int pageSize;
+
+    public record Estadisticas(
+        long totalPalomas,
+        long palomasEnCarrera,
+        long palomasReproductoras,
+        long palomasOtras,
+        Map<String, Long> palomasPorLinea,
+        Map<String, Long> palomasPorSexo
+    ) {
+        // Same shape getEstadisticas always returned
+        public Map<String, Object> toMap() {
+            return Map.of(
+                "totalPalomas", totalPalomas,
+                "palomasEnCarrera", palomasEnCarrera,
+                "palomasReproductoras", palomasReproductoras,
+                "palomasOtras", palomasOtras,
+                "palomasPorLinea", palomasPorLinea,
+                "palomasPorSexo", palomasPorSexo
+            );
+        }
+    }
+
+    public Map<String, Object> getEstadisticas(String palomarId) throws ExecutionException, InterruptedException {
+        return find(palomarId).toMap();
+    }
+
+    public Estadisticas find(String palomarId) throws ExecutionException, InterruptedException {
+        Optional<Estadisticas> estadisticas = findInitialized(palomarId);
+        if (estadisticas.isPresent()) {
+            return estadisticas.get();
+        }
+        // Counters were never computed for this palomar (or only partially, from increments)
+        reconcile(palomarId);
+        // Partial counters would be wrong, not just stale
+        return findInitialized(palomarId).orElseThrow(() ->
+                new IllegalStateException("Statistics of palomar " + palomarId + " could not be computed"));
+    }
+
+    // Stored counters only, a single point read; empty until the palomar has been reconciled
+    public Optional<Estadisticas> findInitialized(String palomarId) throws ExecutionException, InterruptedException {
+        Optional<DocumentSnapshot> document = palomarStatsRepository.find(palomarId);
+        if (document.isEmpty() || !Boolean.TRUE.equals(document.get().getBoolean("inicializado"))) {
+            return Optional.empty();
+        }
+
+        DocumentSnapshot stats = document.get();
+        Map<String, Long> porEstado = counters(stats, POR_ESTADO);
+        Long total = stats.getLong("total");
+        return Optional.of(new Estadisticas(
+            total != null ? total : 0L,
+            porEstado.getOrDefault("Activa en carrera", 0L),
+            porEstado.getOrDefault("Reproductora", 0L),
+            porEstado.getOrDefault("Otra", 0L),
+            counters(stats, POR_LINEA),
+            counters(stats, POR_SEXO)
+        ));
+    }
+
+    // The paloma is already saved, so a failure here must not fail the request or stop later
+    // listeners: the palomares involved are marked for a reconcile on their next read instead
+    @EventListener
+    public void onPalomaChanged(PalomaChangedEvent event) {
+        try {
+            applyChange(event);
+        } catch (ExecutionException | InterruptedException | RuntimeException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            System.out.println("PalomarStatsService: Error updating statistics for paloma " + event.palomaId() + ": " + e.getMessage());
+            Set<String> palomarIds = new LinkedHashSet<>();
+            if (event.before() != null && event.before().getPalomarId() != null) {
+                palomarIds.add(event.before().getPalomarId());
+            }
+            if (event.after() != null && event.after().getPalomarId() != null) {
+                palomarIds.add(event.after().getPalomarId());
+            }
+            palomarIds.forEach(this::markStale);
+        }
+    }
+
+    private void applyChange(PalomaChangedEvent event) throws ExecutionException, InterruptedException {
+        Paloma before = event.before();
+        Paloma after = event.after();
+        String oldPalomarId = before != null ? before.getPalomarId() : null;
+        String newPalomarId = after != null ? after.getPalomarId() : null;
+
+        if (Objects.equals(oldPalomarId, newPalomarId)) {
+            if (newPalomarId == null) {
+                return;
+            }
+            Map<String, Map<String, Long>> deltas = new HashMap<>();
+            addDeltas(deltas, before, -1);
+            addDeltas(deltas, after, 1);
+            palomarStatsRepository.increment(newPalomarId, 0, withoutZeros(deltas));
+            return;
+        }
+        if (oldPalomarId != null) {
+            Map<String, Map<String, Long>> deltas = new HashMap<>();
+            addDeltas(deltas, before, -1);
+            palomarStatsRepository.increment(oldPalomarId, -1, deltas);
+        }
+        if (newPalomarId != null) {
+            Map<String, Map<String, Long>> deltas = new HashMap<>();
+            addDeltas(deltas, after, 1);
+            palomarStatsRepository.increment(newPalomarId, 1, deltas);
+        }
+    }
+
+    // Recomputes the counters of a palomar from scratch, reading only the counted fields. A blind
+    // write would drop increments applied while the palomas were being scanned, so the result is
+    // only stored if the counters' version did not move; otherwise the scan runs again
+    public void reconcile(String palomarId) throws ExecutionException, InterruptedException {
+        for (int attempt = 1; attempt <= RECONCILE_ATTEMPTS; attempt++) {
+            long version = palomarStatsRepository.getVersion(palomarId);
+            if (reconcile(palomarId, version)) {
+                return;
+            }
+        }
+        System.out.println("PalomarStatsService: Palomar " + palomarId + " kept changing during reconcile, counters left as they were");
+    }
+
+    private boolean reconcile(String palomarId, long version) throws ExecutionException, InterruptedException {
+        Map<String, Map<String, Long>> counters = new HashMap<>();
+        long total = 0;
+        String cursor = null;
+        do {
+            EntityQuery query = EntityQuery.create()
+                    .whereEqualTo("palomarId", palomarId)
+                    .select("estado", "sexo", "linea", "año");
+            Page<Paloma> page = palomaRepository.findPage(query, cursor, pageSize);
+            for (Paloma paloma : page.items()) {
+                addDeltas(counters, paloma, 1);
+            }
+            total += page.items().size();
+            cursor = page.nextCursor();
+        } while (cursor != null);
+
+        for (String dimension : new String[]{POR_ESTADO, POR_SEXO, POR_LINEA, POR_AÑO}) {
+            counters.putIfAbsent(dimension, new HashMap<>());
+        }
+        return palomarStatsRepository.replaceIfUnchanged(palomarId, version, total, counters);
+    }
+
+    // Disabled unless stats.reconcile.cron is set; corrects any drift in the counters
+    @Scheduled(cron = "${stats.reconcile.cron:-}")
+    public void reconcileAll() throws ExecutionException, InterruptedException {
+        int palomares = 0;
+        for (Palomar palomar : palomarRepository.findAll()) {
+            reconcile(palomar.getId());
+            palomares++;
+        }
+        System.out.println("PalomarStatsService: Reconciled statistics of " + palomares + " palomares");
+    }
+
+    private void markStale(String palomarId) {
+        try {
+            palomarStatsRepository.markStale(palomarId);
+        } catch (ExecutionException | InterruptedException | RuntimeException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            System.out.println("PalomarStatsService: Could not mark palomar " + palomarId + " for reconcile: " + e.getMessage());
+        }
+    }
+
+    private static void addDeltas(Map<String, Map<String, Long>> deltas, Paloma paloma, long delta) {
+        if (paloma == null) {
+            return;
+        }
+        addDelta(deltas, POR_ESTADO, paloma.getEstado(), delta);
+        addDelta(deltas, POR_SEXO, paloma.getSexo(), delta);
+        addDelta(deltas, POR_LINEA, paloma.getLinea(), delta);
+        addDelta(deltas, POR_AÑO, paloma.getAño() != null ? paloma.getAño().toString() : null, delta);
+    }
+
+    private static void addDelta(Map<String, Map<String, Long>> deltas, String dimension, String value, long delta) {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        deltas.computeIfAbsent(dimension, d -> new HashMap<>()).merge(value, delta, Long::sum);
+    }
+
+    private static Map<String, Map<String, Long>> withoutZeros(Map<String, Map<String, Long>> deltas) {
+        deltas.values().forEach(values -> values.values().removeIf(delta -> delta == 0));
+        return deltas;
+    }
+
+    // Values that dropped to zero are left out, as the old groupingBy did
+    @SuppressWarnings("unchecked")
+    private static Map<String, Long> counters(DocumentSnapshot stats, String dimension) {
+        Map<String, Long> result = new LinkedHashMap<>();
+        Object raw = stats.get(dimension);
+        if (raw instanceof Map<?, ?> map) {
+            ((Map<String, Object>) map).forEach((value, count) -> {
+                if (count instanceof Number number && number.longValue() > 0) {
+                    result.put(value, number.longValue());
+                }
+            });
+        }
+        return result;
+    }
+}
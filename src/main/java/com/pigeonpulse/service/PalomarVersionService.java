@@ -0,0 +1,60 @@
+package com.pigeonpulse.service;
+
+import com.pigeonpulse.event.PalomaChangedEvent;
+import com.pigeonpulse.repository.PalomarVersionRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+@Service
+public class PalomarVersionService {
+
+    @Autowired
+    private PalomarVersionRepository palomarVersionRepository;
+
+    // Palomares whose bump failed; the bump is retried before their version is read again
+    private final Set<String> pendingBumps = ConcurrentHashMap.newKeySet();
+
+    // A palomar with a pending bump fails here rather than hand out a version that would let
+    // derived data written before the change be reused
+    public long getVersion(String palomarId) throws ExecutionException, InterruptedException {
+        if (pendingBumps.contains(palomarId)) {
+            palomarVersionRepository.increment(palomarId);
+            pendingBumps.remove(palomarId);
+        }
+        return palomarVersionRepository.getVersion(palomarId);
+    }
+
+    // Every paloma write bumps the palomares it touches, so anything keyed by version is never stale.
+    // Runs before every other listener so a failure further down the chain cannot skip the bump,
+    // and never throws itself: the paloma is already saved, so a failed bump is only recorded
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onPalomaChanged(PalomaChangedEvent event) {
+        Set<String> palomarIds = new LinkedHashSet<>();
+        if (event.before() != null && event.before().getPalomarId() != null) {
+            palomarIds.add(event.before().getPalomarId());
+        }
+        if (event.after() != null && event.after().getPalomarId() != null) {
+            palomarIds.add(event.after().getPalomarId());
+        }
+        for (String palomarId : palomarIds) {
+            try {
+                palomarVersionRepository.increment(palomarId);
+            } catch (ExecutionException | InterruptedException | RuntimeException e) {
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                System.out.println("PalomarVersionService: Error bumping version of palomar " + palomarId + ": " + e.getMessage());
+                pendingBumps.add(palomarId);
+            }
+        }
+    }
+}
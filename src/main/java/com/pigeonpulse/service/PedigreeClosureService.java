@@ -0,0 +1,214 @@
+package com.pigeonpulse.service;
+
+import com.pigeonpulse.event.PalomaChangedEvent;
+import com.pigeonpulse.model.Paloma;
+import com.pigeonpulse.model.Palomar;
+import com.pigeonpulse.model.PedigreeClosure;
+import com.pigeonpulse.repository.PalomarRepository;
+import com.pigeonpulse.repository.PedigreeClosureRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+// Keeps pedigree_closure in sync: one document per paloma with all its ancestors and their
+// depth, so ancestor and descendant queries are a single indexed read. Incremental updates
+// compute closures from this instance's cached PedigreeGraph, which can miss writes made on
+// other instances for up to pedigree.index.ttl; a rebuild always reads the palomar from
+// Firestore, and pedigree.closure.rebuild.cron bounds how long such drift can last
+@Service
+public class PedigreeClosureService {
+
+    @Autowired
+    private PedigreeClosureRepository closureRepository;
+
+    @Autowired
+    private PedigreeIndexService pedigreeIndexService;
+
+    @Autowired
+    private PalomarRepository palomarRepository;
+
+    @Value("${pedigree.closure.max-depth:30}")
+    private int maxDepth;
+
+    // Palomares known to have a complete closure; a palomar only goes back when an incremental
+    // update fails, until it is rebuilt
+    private final Set<String> builtPalomares = ConcurrentHashMap.newKeySet();
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public CompletableFuture<Optional<PedigreeClosure>> findByPalomaIdAsync(String palomaId) {
+        return closureRepository.findByIdAsync(palomaId);
+    }
+
+    // Descendant lookups are only complete once the palomar has been rebuilt at least once
+    public boolean isBuilt(String palomarId) throws ExecutionException, InterruptedException {
+        if (builtPalomares.contains(palomarId)) {
+            return true;
+        }
+        if (closureRepository.isBuiltAsync(palomarId).get()) {
+            builtPalomares.add(palomarId);
+            return true;
+        }
+        return false;
+    }
+
+    public List<PedigreeClosure> findDescendants(String palomarId, String anillo) throws ExecutionException, InterruptedException {
+        return closureRepository.findDescendantsAsync(palomarId, anillo).get();
+    }
+
+    // Runs after PedigreeIndexService so the graph already reflects the change. The paloma is
+    // already saved, so a failure here must not fail the request or stop later listeners: the
+    // palomar is marked not built instead and descendant lookups walk the graph until a rebuild
+    @EventListener
+    @Order(1)
+    public void onPalomaChanged(PalomaChangedEvent event) {
+        Paloma before = event.before();
+        Paloma after = event.after();
+        if (!pedigreeChanged(before, after)) {
+            return;
+        }
+
+        String oldPalomarId = before != null ? before.getPalomarId() : null;
+        String newPalomarId = after != null ? after.getPalomarId() : null;
+        try {
+            update(event, oldPalomarId, newPalomarId);
+        } catch (ExecutionException | InterruptedException | RuntimeException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            System.out.println("PedigreeClosureService: Error updating closure of paloma " + event.palomaId() + ": " + e.getMessage());
+            if (oldPalomarId != null) {
+                markStale(oldPalomarId);
+            }
+            if (newPalomarId != null && !newPalomarId.equals(oldPalomarId)) {
+                markStale(newPalomarId);
+            }
+        }
+    }
+
+    private void update(PalomaChangedEvent event, String oldPalomarId, String newPalomarId) throws ExecutionException, InterruptedException {
+        Paloma before = event.before();
+        Paloma after = event.after();
+        if (oldPalomarId != null && !Objects.equals(oldPalomarId, newPalomarId)) {
+            closureRepository.deleteById(event.palomaId());
+            PedigreeGraph graph = pedigreeIndexService.getGraph(oldPalomarId);
+            refresh(oldPalomarId, graph, graph.descendantIdsOfAnillo(before.getAnillo()));
+        }
+        if (newPalomarId != null) {
+            PedigreeGraph graph = pedigreeIndexService.getGraph(newPalomarId);
+            Set<String> affected = new LinkedHashSet<>();
+            affected.add(event.palomaId());
+            List<String> descendants = graph.descendantIds(event.palomaId());
+            if (descendants != null) {
+                affected.addAll(descendants);
+            }
+            if (before != null && Objects.equals(oldPalomarId, newPalomarId)
+                    && !Objects.equals(before.getAnillo(), after.getAnillo()) && before.getAnillo() != null) {
+                // Birds that referenced the old ring lose this paloma as an ancestor
+                affected.addAll(graph.descendantIdsOfAnillo(before.getAnillo()));
+            }
+            refresh(newPalomarId, graph, affected);
+        }
+    }
+
+    private void markStale(String palomarId) {
+        builtPalomares.remove(palomarId);
+        try {
+            closureRepository.clearBuilt(palomarId);
+        } catch (ExecutionException | InterruptedException | RuntimeException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            System.out.println("PedigreeClosureService: Could not mark palomar " + palomarId + " for rebuild: " + e.getMessage());
+        }
+    }
+
+    // Recomputes the closure of every paloma of the palomar and drops stale documents
+    public int rebuild(String palomarId) throws ExecutionException, InterruptedException {
+        // A fresh graph, so the rebuild does not persist the cached one's missed writes
+        pedigreeIndexService.invalidate(palomarId);
+        PedigreeGraph graph = pedigreeIndexService.getGraph(palomarId);
+        List<String> palomaIds = graph.palomaIds();
+        refresh(palomarId, graph, palomaIds);
+
+        Set<String> current = new HashSet<>(palomaIds);
+        List<String> stale = closureRepository.findByPalomarId(palomarId).stream()
+                .map(PedigreeClosure::getId)
+                .filter(id -> !current.contains(id))
+                .toList();
+        closureRepository.deleteAllByIdsAsync(stale).get();
+
+        closureRepository.markBuilt(palomarId);
+        builtPalomares.add(palomarId);
+        System.out.println("PedigreeClosureService: Rebuilt " + palomaIds.size() + " closures for palomar " + palomarId);
+        return palomaIds.size();
+    }
+
+    // Disabled unless pedigree.closure.rebuild.cron is set; corrects any drift in the closures
+    @Scheduled(cron = "${pedigree.closure.rebuild.cron:-}")
+    public int rebuildAll() throws ExecutionException, InterruptedException {
+        int total = 0;
+        int palomares = 0;
+        for (Palomar palomar : palomarRepository.findAll()) {
+            total += rebuild(palomar.getId());
+            palomares++;
+        }
+        System.out.println("PedigreeClosureService: Rebuilt closures of " + palomares + " palomares");
+        return total;
+    }
+
+    private void refresh(String palomarId, PedigreeGraph graph, Iterable<String> palomaIds) throws ExecutionException, InterruptedException {
+        Map<String, PedigreeClosure> closures = new LinkedHashMap<>();
+        for (String palomaId : palomaIds) {
+            PedigreeClosure closure = compute(palomarId, graph, palomaId);
+            if (closure != null) {
+                closures.put(palomaId, closure);
+            }
+        }
+        closureRepository.saveAllWithIdsAsync(closures).get();
+    }
+
+    private PedigreeClosure compute(String palomarId, PedigreeGraph graph, String palomaId) {
+        // One generation more than stored tells whether the closure is truncated
+        PedigreeGraph.AncestorScan scan = graph.ancestors(palomaId, maxDepth + 1);
+        if (scan == null) {
+            return null;
+        }
+        PedigreeClosure closure = new PedigreeClosure(palomaId, palomarId, graph.anilloOf(palomaId));
+        for (PedigreeGraph.Ancestor ancestor : scan.ancestors()) {
+            if (ancestor.generation() > maxDepth) {
+                closure.setTruncado(true);
+            } else {
+                closure.addAncestro(ancestor.anillo(), ancestor.generation(), ancestor.palomaId());
+            }
+        }
+        return closure;
+    }
+
+    private static boolean pedigreeChanged(Paloma before, Paloma after) {
+        if (before == null || after == null) {
+            return true;
+        }
+        return !Objects.equals(before.getAnillo(), after.getAnillo())
+                || !Objects.equals(before.getPadre(), after.getPadre())
+                || !Objects.equals(before.getMadre(), after.getMadre())
+                || !Objects.equals(before.getPalomarId(), after.getPalomarId());
+    }
+}
@@ -0,0 +1,371 @@
+package com.pigeonpulse.service;
+
+import com.pigeonpulse.model.Paloma;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Pedigree of one palomar. Rings are dictionary-encoded to int node ids; parent pointers and
+// child adjacency live in primitive arrays. Rings referenced as padre/madre that have no
+// paloma in the palomar are kept as nodes without a document ("external" rings)
+public class PedigreeGraph {
+
+    public static final int NONE = -1;
+
+    private static final int[] NO_CHILDREN = new int[0];
+
+    // One sequence for every graph in the JVM; each change takes the next value
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    // One ancestor reached by a walk; palomaId is null for rings outside the palomar
+    public record Ancestor(String anillo, int generation, String palomaId) {}
+
+    // Result of an ancestor walk: in-palomar ancestors in generation order, plus the rings
+    // outside the palomar where the walk stopped, with their generation. ancestors lists
+    // both kinds in the order they were reached
+    public record AncestorScan(
+        List<String> palomaIds,
+        Map<String, Integer> externalAnillos,
+        Set<String> visitedAnillos,
+        List<Ancestor> ancestors
+    ) {}
+
+    // Immutable copy of the parent arrays for computations that run without holding the lock
+    public record Snapshot(
+        String[] anillos,
+        String[] palomaIds,
+        int[] padre,
+        int[] madre,
+        long version
+    ) {
+        public int size() {
+            return anillos.length;
+        }
+    }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> nodeByAnillo = new HashMap<>();
+    private final Map<String, Integer> nodeByPalomaId = new HashMap<>();
+
+    private String[] anillos;
+    private String[] palomaIds;
+    private int[] padre;
+    private int[] madre;
+    private int[][] children;
+    private int[] childCount;
+    private int size;
+    // Drawn from VERSIONS, so no two graphs (a rebuilt one included) ever share a version and
+    // anything keyed by it is never reused across a rebuild
+    private long version;
+
+    private PedigreeGraph(int capacity) {
+        int initial = Math.max(16, capacity);
+        anillos = new String[initial];
+        palomaIds = new String[initial];
+        padre = new int[initial];
+        madre = new int[initial];
+        children = new int[initial][];
+        childCount = new int[initial];
+    }
+
+    public static PedigreeGraph build(List<Paloma> palomas) {
+        PedigreeGraph graph = new PedigreeGraph(palomas.size() + palomas.size() / 4);
+        for (Paloma paloma : palomas) {
+            graph.upsertInternal(paloma);
+        }
+        // An empty palomar still gets a version of its own
+        graph.version = VERSIONS.incrementAndGet();
+        return graph;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long version() {
+        lock.readLock().lock();
+        try {
+            return version;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(String palomaId) {
+        lock.readLock().lock();
+        try {
+            return nodeByPalomaId.containsKey(palomaId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void upsert(Paloma paloma) {
+        lock.writeLock().lock();
+        try {
+            upsertInternal(paloma);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String palomaId) {
+        lock.writeLock().lock();
+        try {
+            Integer node = nodeByPalomaId.remove(palomaId);
+            if (node != null) {
+                // The ring stays as an external node while other birds still reference it
+                setParents(node, NONE, NONE);
+                palomaIds[node] = null;
+                version = VERSIONS.incrementAndGet();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public AncestorScan ancestors(String palomaId, int maxGenerations) {
+        lock.readLock().lock();
+        try {
+            Integer start = nodeByPalomaId.get(palomaId);
+            if (start == null) {
+                return null;
+            }
+            List<String> found = new ArrayList<>();
+            Map<String, Integer> external = new LinkedHashMap<>();
+            List<Ancestor> ancestors = new ArrayList<>();
+            Set<String> visitedAnillos = new HashSet<>();
+            BitSet visited = new BitSet(size);
+            visited.set(start);
+            visitedAnillos.add(anillos[start]);
+
+            int[] frontier = {start};
+            for (int generation = 1; generation <= maxGenerations && frontier.length > 0; generation++) {
+                int[] next = new int[frontier.length * 2];
+                int nextSize = 0;
+                for (int node : frontier) {
+                    for (int parent : new int[]{padre[node], madre[node]}) {
+                        if (parent == NONE || visited.get(parent)) {
+                            continue;
+                        }
+                        visited.set(parent);
+                        visitedAnillos.add(anillos[parent]);
+                        ancestors.add(new Ancestor(anillos[parent], generation, palomaIds[parent]));
+                        if (palomaIds[parent] == null) {
+                            external.put(anillos[parent], generation);
+                        } else {
+                            found.add(palomaIds[parent]);
+                            next[nextSize++] = parent;
+                        }
+                    }
+                }
+                frontier = Arrays.copyOf(next, nextSize);
+            }
+            return new AncestorScan(found, external, visitedAnillos, ancestors);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Direct children of the bird, or null if it is not in the graph
+    public List<String> childIds(String palomaId) {
+        lock.readLock().lock();
+        try {
+            Integer node = nodeByPalomaId.get(palomaId);
+            if (node == null) {
+                return null;
+            }
+            List<String> result = new ArrayList<>(childCount[node]);
+            for (int i = 0; i < childCount[node]; i++) {
+                result.add(palomaIds[children[node][i]]);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Every descendant of the bird inside the palomar, nearest generations first, or null if
+    // the bird is not in the graph
+    public List<String> descendantIds(String palomaId) {
+        lock.readLock().lock();
+        try {
+            Integer start = nodeByPalomaId.get(palomaId);
+            return start == null ? null : descendantsOf(start);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Same, starting from a ring; works for rings with no paloma in the palomar
+    public List<String> descendantIdsOfAnillo(String anillo) {
+        lock.readLock().lock();
+        try {
+            Integer start = nodeByAnillo.get(anillo);
+            return start == null ? List.of() : descendantsOf(start);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public String anilloOf(String palomaId) {
+        lock.readLock().lock();
+        try {
+            Integer node = nodeByPalomaId.get(palomaId);
+            return node == null ? null : anillos[node];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<String> palomaIds() {
+        lock.readLock().lock();
+        try {
+            return List.copyOf(nodeByPalomaId.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Snapshot snapshot() {
+        lock.readLock().lock();
+        try {
+            return new Snapshot(
+                Arrays.copyOf(anillos, size),
+                Arrays.copyOf(palomaIds, size),
+                Arrays.copyOf(padre, size),
+                Arrays.copyOf(madre, size),
+                version
+            );
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<String> descendantsOf(int start) {
+        List<String> result = new ArrayList<>();
+        BitSet visited = new BitSet(size);
+        visited.set(start);
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(start);
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (int i = 0; i < childCount[node]; i++) {
+                int child = children[node][i];
+                if (!visited.get(child)) {
+                    visited.set(child);
+                    result.add(palomaIds[child]);
+                    queue.add(child);
+                }
+            }
+        }
+        return result;
+    }
+
+    private void upsertInternal(Paloma paloma) {
+        if (paloma.getId() == null || paloma.getAnillo() == null || paloma.getAnillo().isEmpty()) {
+            return;
+        }
+        int target = nodeFor(paloma.getAnillo());
+        Integer existing = nodeByPalomaId.get(paloma.getId());
+        if (existing != null && existing != target) {
+            // The ring changed: the old node goes back to being an external ring
+            setParents(existing, NONE, NONE);
+            palomaIds[existing] = null;
+        }
+        if (palomaIds[target] != null && !palomaIds[target].equals(paloma.getId())) {
+            // Duplicated ring in the palomar, the latest write owns the node
+            nodeByPalomaId.remove(palomaIds[target]);
+        }
+        palomaIds[target] = paloma.getId();
+        nodeByPalomaId.put(paloma.getId(), target);
+        setParents(target, parentNode(paloma.getPadre(), target), parentNode(paloma.getMadre(), target));
+        version = VERSIONS.incrementAndGet();
+    }
+
+    private int parentNode(String anillo, int child) {
+        if (anillo == null || anillo.isEmpty()) {
+            return NONE;
+        }
+        int node = nodeFor(anillo);
+        return node == child ? NONE : node;
+    }
+
+    private int nodeFor(String anillo) {
+        Integer node = nodeByAnillo.get(anillo);
+        if (node != null) {
+            return node;
+        }
+        if (size == anillos.length) {
+            grow();
+        }
+        int id = size++;
+        anillos[id] = anillo;
+        padre[id] = NONE;
+        madre[id] = NONE;
+        children[id] = NO_CHILDREN;
+        nodeByAnillo.put(anillo, id);
+        return id;
+    }
+
+    private void setParents(int node, int newPadre, int newMadre) {
+        if (padre[node] != newPadre) {
+            removeChild(padre[node], node);
+            padre[node] = newPadre;
+            addChild(newPadre, node);
+        }
+        if (madre[node] != newMadre) {
+            removeChild(madre[node], node);
+            madre[node] = newMadre;
+            addChild(newMadre, node);
+        }
+    }
+
+    private void addChild(int parent, int child) {
+        if (parent == NONE) {
+            return;
+        }
+        if (childCount[parent] == children[parent].length) {
+            children[parent] = Arrays.copyOf(children[parent], Math.max(2, childCount[parent] * 2));
+        }
+        children[parent][childCount[parent]++] = child;
+    }
+
+    private void removeChild(int parent, int child) {
+        if (parent == NONE) {
+            return;
+        }
+        int[] list = children[parent];
+        for (int i = 0; i < childCount[parent]; i++) {
+            if (list[i] == child) {
+                list[i] = list[--childCount[parent]];
+                return;
+            }
+        }
+    }
+
+    private void grow() {
+        int capacity = anillos.length * 2;
+        anillos = Arrays.copyOf(anillos, capacity);
+        palomaIds = Arrays.copyOf(palomaIds, capacity);
+        padre = Arrays.copyOf(padre, capacity);
+        madre = Arrays.copyOf(madre, capacity);
+        children = Arrays.copyOf(children, capacity);
+        childCount = Arrays.copyOf(childCount, capacity);
+    }
+}
@@ -0,0 +1,132 @@
+package com.pigeonpulse.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.pigeonpulse.event.PalomaChangedEvent;
+import com.pigeonpulse.model.Paloma;
+import com.pigeonpulse.repository.PalomaRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Keeps the pedigree graph of recently used palomares in memory. A graph is built from one
+// query the first time it is needed, kept in sync with PalomaChangedEvent and rebuilt ttl after
+// it was built, which bounds how long a missed event can leave it stale
+@Service
+public class PedigreeIndexService {
+
+    @Autowired
+    private PalomaRepository palomaRepository;
+
+    @Value("${pedigree.index.max-nodes:500000}")
+    private long maxNodes;
+
+    @Value("${pedigree.index.ttl:30m}")
+    private Duration ttl;
+
+    private Cache<String, PedigreeGraph> graphs;
+
+    // Writes seen per palomar while its graph is being built or cached; lets a build detect that
+    // it raced with a write. Entries go away with the graph
+    private final Map<String, AtomicLong> writeCounters = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void init() {
+        graphs = Caffeine.newBuilder()
+                .maximumWeight(maxNodes)
+                .weigher((String palomarId, PedigreeGraph graph) -> graph.size() + 1)
+                .expireAfter(new ExpireAfterBuild<String, PedigreeGraph>(ttl))
+                .removalListener((String palomarId, PedigreeGraph graph, RemovalCause cause) -> {
+                    if (cause != RemovalCause.REPLACED && palomarId != null) {
+                        writeCounters.remove(palomarId);
+                    }
+                })
+                .build();
+    }
+
+    public PedigreeGraph getGraph(String palomarId) throws ExecutionException, InterruptedException {
+        PedigreeGraph graph = graphs.getIfPresent(palomarId);
+        if (graph != null) {
+            return graph;
+        }
+
+        AtomicLong writes = writeCounters.computeIfAbsent(palomarId, id -> new AtomicLong());
+        long writesBefore = writes.get();
+        PedigreeGraph built = PedigreeGraph.build(palomaRepository.findByPalomarId(palomarId));
+        if (raced(palomarId, writes, writesBefore)) {
+            // A write landed while the palomar was being read; use the graph for this call only
+            releaseCounter(palomarId, writes);
+            return built;
+        }
+        PedigreeGraph existing = graphs.asMap().putIfAbsent(palomarId, built);
+        if (existing != null) {
+            return existing;
+        }
+        if (raced(palomarId, writes, writesBefore)) {
+            // The write's event ran before the graph was cached, so it never saw this graph
+            graphs.asMap().remove(palomarId, built);
+        }
+        return built;
+    }
+
+    public void invalidate(String palomarId) {
+        graphs.invalidate(palomarId);
+    }
+
+    // Runs first so listeners that read the graph see the change
+    @EventListener
+    @Order(0)
+    public void onPalomaChanged(PalomaChangedEvent event) {
+        Paloma before = event.before();
+        Paloma after = event.after();
+        String oldPalomarId = before != null ? before.getPalomarId() : null;
+        String newPalomarId = after != null ? after.getPalomarId() : null;
+
+        if (oldPalomarId != null && !Objects.equals(oldPalomarId, newPalomarId)) {
+            countWrite(oldPalomarId);
+            PedigreeGraph graph = graphs.getIfPresent(oldPalomarId);
+            if (graph != null) {
+                graph.remove(event.palomaId());
+            }
+        }
+        if (newPalomarId != null) {
+            countWrite(newPalomarId);
+            PedigreeGraph graph = graphs.getIfPresent(newPalomarId);
+            if (graph != null) {
+                graph.upsert(after);
+                // Re-weigh the entry now that the graph may have grown
+                graphs.asMap().replace(newPalomarId, graph, graph);
+            }
+        }
+    }
+
+    // Only palomares with a graph being built or cached are tracked
+    private void countWrite(String palomarId) {
+        AtomicLong writes = writeCounters.get(palomarId);
+        if (writes != null) {
+            writes.incrementAndGet();
+        }
+    }
+
+    // A counter replaced while building (its graph was evicted meanwhile) also counts as a race
+    private boolean raced(String palomarId, AtomicLong writes, long writesBefore) {
+        return writes.get() != writesBefore || writeCounters.get(palomarId) != writes;
+    }
+
+    private void releaseCounter(String palomarId, AtomicLong writes) {
+        if (graphs.getIfPresent(palomarId) == null) {
+            writeCounters.remove(palomarId, writes);
+        }
+    }
+}
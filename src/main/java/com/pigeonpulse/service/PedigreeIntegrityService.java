@@ -0,0 +1,250 @@
+package com.pigeonpulse.service;
+
+import com.pigeonpulse.model.Paloma;
+import com.pigeonpulse.model.Palomar;
+import com.pigeonpulse.repository.EntityQuery;
+import com.pigeonpulse.repository.Page;
+import com.pigeonpulse.repository.PalomaRepository;
+import com.pigeonpulse.repository.PalomarRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Checks the pedigree of a palomar: parents that do not exist, padre that is not a macho,
+// madre that is not a hembra, duplicated rings and cycles. The palomar is read in projected
+// pages and only a compact record per bird is kept in memory
+@Service
+public class PedigreeIntegrityService {
+
+    public enum Tipo {
+        PADRE_INEXISTENTE, MADRE_INEXISTENTE, PADRE_NO_MACHO, MADRE_NO_HEMBRA,
+        PADRE_Y_MADRE_IGUALES, ANILLO_DUPLICADO, CICLO
+    }
+
+    public record Incidencia(Tipo tipo, String palomaId, String anillo, String detalle) {}
+
+    public record Reporte(String palomarId, int palomasRevisadas, List<Incidencia> incidencias, Instant fecha) {}
+
+    private record Bird(String id, String anillo, String sexo, String padre, String madre) {}
+
+    @Autowired
+    private PalomaRepository palomaRepository;
+
+    @Autowired
+    private PalomarRepository palomarRepository;
+
+    @Value("${integrity.scan.page-size:1000}")
+    private int pageSize;
+
+    @Value("${integrity.scan.parallelism:4}")
+    private int parallelism;
+
+    private ExecutorService executor;
+
+    // Last report per palomar, from the scheduled scan or an explicit one
+    private final Map<String, Reporte> latestReports = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void init() {
+        executor = Executors.newFixedThreadPool(parallelism);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    public Optional<Reporte> getLatestReport(String palomarId) {
+        return Optional.ofNullable(latestReports.get(palomarId));
+    }
+
+    public Reporte scan(String palomarId) throws ExecutionException, InterruptedException {
+        List<Bird> birds = new ArrayList<>();
+        String cursor = null;
+        do {
+            EntityQuery query = EntityQuery.create()
+                    .whereEqualTo("palomarId", palomarId)
+                    .select("anillo", "sexo", "padre", "madre");
+            Page<Paloma> page = palomaRepository.findPage(query, cursor, pageSize);
+            for (Paloma paloma : page.items()) {
+                birds.add(new Bird(paloma.getId(), paloma.getAnillo(), paloma.getSexo(), paloma.getPadre(), paloma.getMadre()));
+            }
+            cursor = page.nextCursor();
+        } while (cursor != null);
+
+        List<Incidencia> incidencias = new ArrayList<>();
+        Map<String, Integer> nodeByAnillo = new HashMap<>();
+        for (int i = 0; i < birds.size(); i++) {
+            Bird bird = birds.get(i);
+            if (!hasText(bird.anillo())) {
+                continue;
+            }
+            Integer previous = nodeByAnillo.putIfAbsent(bird.anillo(), i);
+            if (previous != null) {
+                incidencias.add(new Incidencia(Tipo.ANILLO_DUPLICADO, bird.id(), bird.anillo(),
+                        "Mismo anillo que la paloma " + birds.get(previous).id()));
+            }
+        }
+
+        // Parents registered in other palomares are valid; resolve them in batched queries
+        Set<String> outside = new LinkedHashSet<>();
+        for (Bird bird : birds) {
+            for (String parent : new String[]{bird.padre(), bird.madre()}) {
+                if (hasText(parent) && !nodeByAnillo.containsKey(parent)) {
+                    outside.add(parent);
+                }
+            }
+        }
+        Map<String, String> outsideSexo = new HashMap<>();
+        if (!outside.isEmpty()) {
+            for (Paloma paloma : palomaRepository.findByAnillosAsync(outside).get()) {
+                outsideSexo.putIfAbsent(paloma.getAnillo(), paloma.getSexo() != null ? paloma.getSexo() : "");
+            }
+        }
+
+        for (Bird bird : birds) {
+            checkParent(bird, bird.padre(), "Macho", Tipo.PADRE_INEXISTENTE, Tipo.PADRE_NO_MACHO, birds, nodeByAnillo, outsideSexo, incidencias);
+            checkParent(bird, bird.madre(), "Hembra", Tipo.MADRE_INEXISTENTE, Tipo.MADRE_NO_HEMBRA, birds, nodeByAnillo, outsideSexo, incidencias);
+            if (hasText(bird.padre()) && bird.padre().equals(bird.madre())) {
+                incidencias.add(new Incidencia(Tipo.PADRE_Y_MADRE_IGUALES, bird.id(), bird.anillo(), "Padre y madre: " + bird.padre()));
+            }
+        }
+        for (List<Integer> cycle : findCycles(birds, nodeByAnillo)) {
+            Bird first = birds.get(cycle.get(0));
+            String path = String.join(" -> ", cycle.stream().map(node -> birds.get(node).anillo()).toList()) + " -> " + first.anillo();
+            incidencias.add(new Incidencia(Tipo.CICLO, first.id(), first.anillo(), path));
+        }
+
+        Reporte reporte = new Reporte(palomarId, birds.size(), incidencias, Instant.now());
+        latestReports.put(palomarId, reporte);
+        return reporte;
+    }
+
+    // Scans every palomar, up to integrity.scan.parallelism at a time
+    public List<Reporte> scanAll() throws ExecutionException, InterruptedException {
+        List<CompletableFuture<Reporte>> scans = new ArrayList<>();
+        for (Palomar palomar : palomarRepository.findAll()) {
+            scans.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return scan(palomar.getId());
+                } catch (ExecutionException | InterruptedException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor).exceptionally(error -> {
+                System.out.println("PedigreeIntegrityService: Error scanning palomar " + palomar.getId() + ": " + error.getMessage());
+                return null;
+            }));
+        }
+        CompletableFuture.allOf(scans.toArray(CompletableFuture[]::new)).get();
+        return scans.stream().map(CompletableFuture::join).filter(reporte -> reporte != null).toList();
+    }
+
+    // Disabled unless integrity.scan.cron is set
+    @Scheduled(cron = "${integrity.scan.cron:-}")
+    public void scheduledScan() throws ExecutionException, InterruptedException {
+        List<Reporte> reportes = scanAll();
+        int incidencias = reportes.stream().mapToInt(r -> r.incidencias().size()).sum();
+        System.out.println("PedigreeIntegrityService: Scanned " + reportes.size() + " palomares, " + incidencias + " incidencias");
+    }
+
+    private static void checkParent(Bird bird, String parent, String expectedSexo, Tipo missing, Tipo wrongSexo,
+                                    List<Bird> birds, Map<String, Integer> nodeByAnillo, Map<String, String> outsideSexo,
+                                    List<Incidencia> incidencias) {
+        if (!hasText(parent)) {
+            return;
+        }
+        Integer node = nodeByAnillo.get(parent);
+        String sexo = node != null ? birds.get(node).sexo() : outsideSexo.get(parent);
+        if (node == null && sexo == null) {
+            incidencias.add(new Incidencia(missing, bird.id(), bird.anillo(), "No existe la paloma " + parent));
+        } else if (!expectedSexo.equals(sexo)) {
+            incidencias.add(new Incidencia(wrongSexo, bird.id(), bird.anillo(),
+                    parent + " tiene sexo " + (hasText(sexo) ? sexo : "sin definir")));
+        }
+    }
+
+    // Iterative depth-first search over parent links; every back edge closes one cycle
+    private static List<List<Integer>> findCycles(List<Bird> birds, Map<String, Integer> nodeByAnillo) {
+        int size = birds.size();
+        int[][] parents = new int[size][];
+        for (int node = 0; node < size; node++) {
+            Bird bird = birds.get(node);
+            parents[node] = new int[]{parentNode(bird.padre(), nodeByAnillo), parentNode(bird.madre(), nodeByAnillo)};
+        }
+
+        List<List<Integer>> cycles = new ArrayList<>();
+        byte[] state = new byte[size]; // 0 = new, 1 = on the stack, 2 = done
+        int[] stack = new int[size];
+        int[] nextEdge = new int[size];
+        int[] stackPosition = new int[size];
+        Arrays.fill(stackPosition, -1);
+
+        for (int root = 0; root < size; root++) {
+            if (state[root] != 0) {
+                continue;
+            }
+            int top = 0;
+            stack[0] = root;
+            state[root] = 1;
+            stackPosition[root] = 0;
+            nextEdge[root] = 0;
+            while (top >= 0) {
+                int node = stack[top];
+                if (nextEdge[node] == parents[node].length) {
+                    state[node] = 2;
+                    stackPosition[node] = -1;
+                    top--;
+                    continue;
+                }
+                int parent = parents[node][nextEdge[node]++];
+                if (parent < 0) {
+                    continue;
+                }
+                if (state[parent] == 1) {
+                    List<Integer> cycle = new ArrayList<>();
+                    for (int i = stackPosition[parent]; i <= top; i++) {
+                        cycle.add(stack[i]);
+                    }
+                    cycles.add(cycle);
+                } else if (state[parent] == 0) {
+                    stack[++top] = parent;
+                    state[parent] = 1;
+                    stackPosition[parent] = top;
+                    nextEdge[parent] = 0;
+                }
+            }
+        }
+        return cycles;
+    }
+
+    private static int parentNode(String anillo, Map<String, Integer> nodeByAnillo) {
+        if (!hasText(anillo)) {
+            return -1;
+        }
+        Integer node = nodeByAnillo.get(anillo);
+        return node == null ? -1 : node;
+    }
+
+    private static boolean hasText(String value) {
+        return value != null && !value.isEmpty();
+    }
+}
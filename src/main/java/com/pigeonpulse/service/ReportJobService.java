@@ -0,0 +1,169 @@
+package com.pigeonpulse.service;
+
+import com.pigeonpulse.dto.CensoRequest;
+import com.pigeonpulse.model.Palomar;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+// Censo reports generated in the background. Each job runs on its own virtual thread; a global
+// semaphore bounds how many generate at once, so a burst of requests waits in line instead of
+// holding HTTP threads. Finished PDFs are kept on local disk until they expire
+@Service
+public class ReportJobService {
+
+    public enum Estado { PENDIENTE, EN_PROCESO, COMPLETADO, ERROR }
+
+    public record ReportJob(
+        String id,
+        String usuarioId,
+        String palomarId,
+        Estado estado,
+        Instant creado,
+        Instant terminado,
+        String error
+    ) {
+        ReportJob withEstado(Estado estado, String error) {
+            Instant fin = estado == Estado.COMPLETADO || estado == Estado.ERROR ? Instant.now() : null;
+            return new ReportJob(id, usuarioId, palomarId, estado, creado, fin, error);
+        }
+    }
+
+    // Thrown when the usuario already has reports.jobs.max-per-user jobs queued or running
+    public static class TooManyJobsException extends RuntimeException {
+        public TooManyJobsException(String message) {
+            super(message);
+        }
+    }
+
+    @Autowired
+    private CensoPdfService censoPdfService;
+
+    @Value("${reports.jobs.max-concurrent:4}")
+    private int maxConcurrent;
+
+    @Value("${reports.jobs.max-per-user:3}")
+    private int maxPerUser;
+
+    @Value("${reports.jobs.dir:${java.io.tmpdir}/pigeonpulse-reports}")
+    private Path directory;
+
+    @Value("${reports.jobs.ttl:1h}")
+    private Duration ttl;
+
+    private final Map<String, ReportJob> jobs = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> activeByUsuario = new ConcurrentHashMap<>();
+    private Semaphore workers;
+    private ExecutorService executor;
+
+    @PostConstruct
+    void init() throws IOException {
+        workers = new Semaphore(maxConcurrent, true);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        Files.createDirectories(directory);
+        // Jobs do not survive a restart, so neither do their files
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(ReportJobService::deleteQuietly);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public ReportJob submitCenso(String usuarioId, Palomar palomar, CensoRequest request) {
+        AtomicInteger active = activeByUsuario.computeIfAbsent(usuarioId, id -> new AtomicInteger());
+        if (active.incrementAndGet() > maxPerUser) {
+            active.decrementAndGet();
+            throw new TooManyJobsException("Demasiados reportes en curso para el usuario " + usuarioId);
+        }
+
+        ReportJob job = new ReportJob(UUID.randomUUID().toString(), usuarioId, palomar.getId(),
+                Estado.PENDIENTE, Instant.now(), null, null);
+        jobs.put(job.id(), job);
+        executor.submit(() -> run(job.id(), palomar, request, active));
+        return job;
+    }
+
+    // Only the usuario that submitted the job can see it
+    public Optional<ReportJob> find(String jobId, String usuarioId) {
+        return Optional.ofNullable(jobs.get(jobId)).filter(job -> job.usuarioId().equals(usuarioId));
+    }
+
+    public Path resultPath(ReportJob job) {
+        return directory.resolve(job.id() + ".pdf");
+    }
+
+    private void run(String jobId, Palomar palomar, CensoRequest request, AtomicInteger active) {
+        try {
+            workers.acquire();
+            try {
+                update(jobId, Estado.EN_PROCESO, null);
+                Path target = directory.resolve(jobId + ".pdf");
+                Path partial = directory.resolve(jobId + ".pdf.part");
+                try (OutputStream out = Files.newOutputStream(partial)) {
+                    censoPdfService.writeCenso(out, palomar, palomar.getId(), request, LocalDate.now());
+                }
+                Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                update(jobId, Estado.COMPLETADO, null);
+            } finally {
+                workers.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            update(jobId, Estado.ERROR, "Generación interrumpida");
+        } catch (IOException | RuntimeException e) {
+            System.out.println("ReportJobService: Error generating report " + jobId + ": " + e.getMessage());
+            deleteQuietly(directory.resolve(jobId + ".pdf.part"));
+            update(jobId, Estado.ERROR, e.getMessage());
+        } finally {
+            active.decrementAndGet();
+        }
+    }
+
+    private void update(String jobId, Estado estado, String error) {
+        jobs.computeIfPresent(jobId, (id, job) -> job.withEstado(estado, error));
+    }
+
+    @Scheduled(fixedDelayString = "${reports.jobs.cleanup-interval:5m}")
+    public void removeExpired() {
+        Instant cutoff = Instant.now().minus(ttl);
+        jobs.values().removeIf(job -> {
+            if (job.terminado() == null || job.terminado().isAfter(cutoff)) {
+                return false;
+            }
+            deleteQuietly(resultPath(job));
+            return true;
+        });
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            System.out.println("ReportJobService: Could not delete " + path + ": " + e.getMessage());
+        }
+    }
+}
@@ -1,11 +1,19 @@
 package com.pigeonpulse.service;
 
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.pigeonpulse.event.MembershipChangedEvent;
 import com.pigeonpulse.model.Palomar;
 import com.pigeonpulse.model.UsuarioPalomar;
 import com.pigeonpulse.repository.UsuarioPalomarRepository;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.ExecutionException;
@@ -13,9 +21,31 @@ import java.util.concurrent.ExecutionException;
 @Service
 public class UsuarioPalomarService {
 
+    private record AccessKey(String usuarioId, String palomarId) {}
+
     @Autowired
     private UsuarioPalomarRepository usuarioPalomarRepository;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${access.decision-cache.max-size:50000}")
+    private long accessCacheMaxSize;
+
+    @Value("${access.decision-cache.ttl:60s}")
+    private Duration accessCacheTtl;
+
+    // (usuarioId, palomarId) -> rol, Optional.empty() caches a denied access
+    private AsyncCache<AccessKey, Optional<String>> accessDecisions;
+
+    @PostConstruct
+    void initAccessCache() {
+        accessDecisions = Caffeine.newBuilder()
+                .maximumSize(accessCacheMaxSize)
+                .expireAfterWrite(accessCacheTtl)
+                .buildAsync();
+    }
+
     public Optional<UsuarioPalomar> findById(String id) throws ExecutionException, InterruptedException {
         return usuarioPalomarRepository.findById(id);
     }
@@ -33,48 +63,76 @@ public class UsuarioPalomarService {
     }
 
     public String save(UsuarioPalomar usuarioPalomar) throws ExecutionException, InterruptedException {
-        return usuarioPalomarRepository.save(usuarioPalomar);
+        String id = usuarioPalomarRepository.save(usuarioPalomar);
+        publishMembershipChanged(usuarioPalomar);
+        return id;
     }
 
     public void update(String id, UsuarioPalomar usuarioPalomar) throws ExecutionException, InterruptedException {
         usuarioPalomarRepository.update(id, usuarioPalomar);
+        publishMembershipChanged(usuarioPalomar);
     }
 
     public void deleteById(String id) throws ExecutionException, InterruptedException {
+        Optional<UsuarioPalomar> relacion = usuarioPalomarRepository.findById(id);
         usuarioPalomarRepository.deleteById(id);
+        relacion.ifPresent(this::publishMembershipChanged);
     }
 
     // Crear relación propietario al crear palomar
     public UsuarioPalomar createPropietarioRelation(String usuarioId, Palomar palomar) throws ExecutionException, InterruptedException {
         System.out.println("UsuarioPalomarService: Creating propietario relation for user: " + usuarioId + ", palomar: " + palomar.getId());
-        UsuarioPalomar relacion = new UsuarioPalomar(usuarioId, palomar.getId(), "PROPIETARIO");
-        String id = save(relacion);
-        relacion.setId(id);
-        System.out.println("UsuarioPalomarService: Created relation with ID: " + id);
+        UsuarioPalomar relacion = createIfAbsent(new UsuarioPalomar(usuarioId, palomar.getId(), "PROPIETARIO"));
+        System.out.println("UsuarioPalomarService: Relation with ID: " + relacion.getId() + ", rol: " + relacion.getRol());
         return relacion;
     }
 
-    // Invitar colaborador a un palomar
+    // Invitar colaborador a un palomar. Si el usuario ya tiene acceso no se modifica su rol
     public UsuarioPalomar inviteColaborador(String usuarioId, String palomarId) throws ExecutionException, InterruptedException {
-        UsuarioPalomar relacion = new UsuarioPalomar(usuarioId, palomarId, "COLABORADOR");
-        String id = save(relacion);
-        relacion.setId(id);
+        return createIfAbsent(new UsuarioPalomar(usuarioId, palomarId, "COLABORADOR"));
+    }
+
+    // Returns the existing relation (legacy ones included) instead of overwriting it
+    private UsuarioPalomar createIfAbsent(UsuarioPalomar relacion) throws ExecutionException, InterruptedException {
+        Optional<UsuarioPalomar> existing = findByUsuarioIdAndPalomarId(relacion.getUsuarioId(), relacion.getPalomarId());
+        if (existing.isPresent()) {
+            return existing.get();
+        }
+        if (!usuarioPalomarRepository.createMembership(relacion)) {
+            // Created concurrently by another request
+            return findByUsuarioIdAndPalomarId(relacion.getUsuarioId(), relacion.getPalomarId()).orElse(relacion);
+        }
+        publishMembershipChanged(relacion);
         return relacion;
     }
 
+    // Revocar acceso de un usuario a un palomar
+    public void revokeAccess(String usuarioId, String palomarId) throws ExecutionException, InterruptedException {
+        Optional<UsuarioPalomar> relacion = findByUsuarioIdAndPalomarId(usuarioId, palomarId);
+        if (relacion.isPresent()) {
+            usuarioPalomarRepository.deleteById(relacion.get().getId());
+        }
+        eventPublisher.publishEvent(new MembershipChangedEvent(usuarioId, palomarId));
+    }
+
+    // Migrar relaciones antiguas a ids deterministas {usuarioId}_{palomarId}
+    public int migrateMemberships() throws ExecutionException, InterruptedException {
+        return usuarioPalomarRepository.migrateToMembershipIds();
+    }
+
     // Verificar si usuario tiene acceso a palomar
     public boolean hasAccessToPalomar(String usuarioId, String palomarId) throws ExecutionException, InterruptedException {
-        System.out.println("UsuarioPalomarService: Checking access for user: " + usuarioId + ", palomar: " + palomarId);
-        Optional<UsuarioPalomar> relacion = findByUsuarioIdAndPalomarId(usuarioId, palomarId);
-        boolean hasAccess = relacion.isPresent();
-        System.out.println("UsuarioPalomarService: Has access: " + hasAccess);
+        boolean hasAccess = getRolInPalomar(usuarioId, palomarId).isPresent();
+        System.out.println("UsuarioPalomarService: Access for user: " + usuarioId + ", palomar: " + palomarId + ": " + hasAccess);
         return hasAccess;
     }
 
     // Obtener rol del usuario en el palomar
     public Optional<String> getRolInPalomar(String usuarioId, String palomarId) throws ExecutionException, InterruptedException {
-        Optional<UsuarioPalomar> relacion = findByUsuarioIdAndPalomarId(usuarioId, palomarId);
-        return relacion.map(UsuarioPalomar::getRol);
+        return accessDecisions.get(new AccessKey(usuarioId, palomarId), (key, executor) ->
+                usuarioPalomarRepository.findByUsuarioIdAndPalomarIdAsync(key.usuarioId(), key.palomarId())
+                        .thenApply(relacion -> relacion.map(UsuarioPalomar::getRol)))
+                .get();
     }
 
     // Verificar si usuario puede gestionar usuarios en el palomar
@@ -82,4 +140,13 @@ public class UsuarioPalomarService {
         Optional<String> rol = getRolInPalomar(usuarioId, palomarId);
         return rol.isPresent() && "PROPIETARIO".equals(rol.get());
     }
-}
\ No newline at end of file
+
+    @EventListener
+    public void onMembershipChanged(MembershipChangedEvent event) {
+        accessDecisions.synchronous().invalidate(new AccessKey(event.usuarioId(), event.palomarId()));
+    }
+
+    private void publishMembershipChanged(UsuarioPalomar relacion) {
+        eventPublisher.publishEvent(new MembershipChangedEvent(relacion.getUsuarioId(), relacion.getPalomarId()));
+    }
+}
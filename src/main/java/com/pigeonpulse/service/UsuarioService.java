@@ -1,13 +1,18 @@
 package com.pigeonpulse.service;
 
+import com.pigeonpulse.event.UsuarioChangedEvent;
 import com.pigeonpulse.model.Palomar;
 import com.pigeonpulse.model.Usuario;
 import com.pigeonpulse.model.UsuarioPalomar;
 import com.pigeonpulse.repository.UsuarioRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
 @Service
@@ -22,10 +27,21 @@ public class UsuarioService {
     @Autowired
     private UsuarioPalomarService usuarioPalomarService;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     public Optional<Usuario> findById(String id) throws ExecutionException, InterruptedException {
         return usuarioRepository.findById(id);
     }
 
+    public CompletableFuture<Optional<Usuario>> findByIdAsync(String id) {
+        return usuarioRepository.findByIdAsync(id);
+    }
+
+    public List<Usuario> findAllByIds(Collection<String> ids) throws ExecutionException, InterruptedException {
+        return usuarioRepository.findAllByIds(ids);
+    }
+
     public Optional<Usuario> findByEmail(String email) throws ExecutionException, InterruptedException {
         return usuarioRepository.findByEmail(email);
     }
@@ -40,10 +56,12 @@ public class UsuarioService {
 
     public void update(String id, Usuario usuario) throws ExecutionException, InterruptedException {
         usuarioRepository.update(id, usuario);
+        eventPublisher.publishEvent(new UsuarioChangedEvent(id));
     }
 
     public void deleteById(String id) throws ExecutionException, InterruptedException {
         usuarioRepository.deleteById(id);
+        eventPublisher.publishEvent(new UsuarioChangedEvent(id));
     }
 
     public Usuario createOrUpdateFromGoogle(String googleId, String email, String nombre) throws ExecutionException, InterruptedException {